@@ -0,0 +1,11 @@
+#!/bin/sh
+# Builds wuballs-bench.jar: the game engine plus the benchmarks, without
+# the Android classes. Run it with: java -jar wuballs-bench.jar
+# and the thread scaling of the searches, best on a multicore machine, with:
+# java -cp wuballs-bench.jar com.vincewu.wuballs.HintBenchmarks
+cd "$(dirname "$0")/.."
+rm -rf bin/bench && mkdir -p bin/bench
+javac -d bin/bench $(grep -L "^import android" src/com/vincewu/wuballs/*.java) \
+    bench/com/vincewu/wuballs/*.java || exit 1
+jar cfe bin/wuballs-bench.jar com.vincewu.wuballs.GameBoardBenchmarks -C bin/bench . || exit 1
+echo "built bin/wuballs-bench.jar"
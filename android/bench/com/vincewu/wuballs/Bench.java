@@ -0,0 +1,120 @@
+package com.vincewu.wuballs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal benchmark harness, in the spirit of JMH's average-time mode: timed
+ * warmup iterations, then timed measurement iterations, reporting the time
+ * per operation and the bytes allocated per operation (JMH's
+ * gc.alloc.rate.norm). Allocations are read from the HotSpot thread
+ * allocation counter; on other JVMs that column shows n/a.
+ */
+class Bench {
+
+    /** One benchmark operation. Return something derived from the work done, so the JIT can't drop it. */
+    interface Op {
+        public int run() throws Exception;
+    }
+
+    private static volatile int sink; // consumes results of Op.run
+
+    private final Pattern filter;
+    private int warmupIterations = 5;
+    private int iterations = 5;
+    private long iterationNanos = 500000000L;
+    private int batch = 256; // ops run between looks at the clock
+
+    public Bench(String filter) {
+        this.filter = Pattern.compile(filter == null ? ".*" : ".*(" + filter + ").*");
+        System.out.println(String.format("%-40s %12s %10s %12s", "Benchmark", "ns/op", "error",
+                "B/op"));
+    }
+
+    public void setIterations(int warmupIterations, int iterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1000000L;
+    }
+
+    /** ops run between looks at the clock: 1 for ops that take milliseconds */
+    public void setBatch(int batch) {
+        this.batch = batch;
+    }
+
+    /** whether benchmarks called name run, with this filter */
+    public boolean matches(String name) {
+        return filter.matcher(name).matches();
+    }
+
+    /**
+     * Run op, if name matches the filter, and print a line of results
+     * 
+     * @return mean nanoseconds per op, or 0 if op didn't run
+     */
+    public double run(String name, Op op) throws Exception {
+        if (!matches(name))
+            return 0;
+
+        for (int x = 0; x < warmupIterations; x++)
+            iteration(op, null);
+
+        double[] nanosPerOp = new double[iterations];
+        long[] allocation = new long[2]; // bytes, ops
+        for (int x = 0; x < iterations; x++)
+            nanosPerOp[x] = iteration(op, allocation);
+
+        double mean = 0;
+        for (int x = 0; x < iterations; x++)
+            mean += nanosPerOp[x] / iterations;
+        double variance = 0;
+        for (int x = 0; x < iterations; x++)
+            variance += (nanosPerOp[x] - mean) * (nanosPerOp[x] - mean) / Math.max(1, iterations - 1);
+
+        String bytesPerOp = allocation[0] < 0 ? "n/a" : String.format("%.1f",
+                (double) allocation[0] / allocation[1]);
+        System.out.println(String.format("%-40s %12.1f %10.1f %12s", name, mean,
+                Math.sqrt(variance), bytesPerOp));
+        return mean;
+    }
+
+    /**
+     * Call op for one iteration's worth of time.
+     * @param allocation if not null, bytes allocated and ops run are added to it
+     * @return nanoseconds per op
+     */
+    private double iteration(Op op, long[] allocation) throws Exception {
+        long ops = 0;
+        int result = 0;
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime(), elapsed;
+        do {
+            for (int x = 0; x < batch; x++)
+                result += op.run();
+            ops += batch;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        long bytesAfter = allocatedBytes();
+        sink = result;
+
+        if (allocation != null) {
+            if (bytesBefore < 0 || allocation[0] < 0)
+                allocation[0] = -1;
+            else
+                allocation[0] += bytesAfter - bytesBefore;
+            allocation[1] += ops;
+        }
+        return (double) elapsed / ops;
+    }
+
+    /** bytes allocated so far by this thread, or -1 if the JVM can't tell */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread
+                    .currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,237 @@
+package com.vincewu.wuballs;
+
+import java.util.Random;
+
+/**
+ * Benchmarks for the GameBoard hot paths: routes and moves on sparse, dense
+ * and maze-like boards, connect-5 detection with and without Jokers, placing
+ * balls on a full, a half full and an empty board, and lookahead with
+ * peek/get. Boards are 9x9 unless -size says otherwise.
+ *
+ * Build and run with plain Java, no Android SDK needed (see build.sh):
+ * java -jar wuballs-bench.jar [filter] [-engine OBJECTS|BITBOARD] [-size n] [-quick]
+ */
+class GameBoardBenchmarks {
+
+    private static GameBoard.EngineType engineType = GameBoard.EngineType.BITBOARD;
+    private static int size = new GameOptions().size;
+
+    public static void main(String[] args) throws Exception {
+        String filter = null;
+        boolean quick = false;
+        for (int x = 0; x < args.length; x++) {
+            if (args[x].equals("-engine"))
+                engineType = GameBoard.EngineType.valueOf(args[++x]);
+            else if (args[x].equals("-size"))
+                size = Integer.parseInt(args[++x]);
+            else if (args[x].equals("-quick"))
+                quick = true;
+            else
+                filter = args[x];
+        }
+        Bench bench = new Bench(filter);
+        if (quick)
+            bench.setIterations(2, 3, 200);
+
+        int cells = size * size;
+        routes(bench, "sparse", sparseBoard());
+        routes(bench, "dense", denseBoard());
+        routes(bench, "maze", mazeBoard());
+        connectFive(bench);
+        placeBall(bench, 1);
+        placeBall(bench, cells / 2);
+        placeBall(bench, cells - 1);
+        lookahead(bench);
+    }
+
+    private static GameBoard newBoard() {
+        GameOptions options = new GameOptions();
+        options.engineType = engineType;
+        options.size = size;
+        return new GameBoard(options, 123);
+    }
+
+    /** a ball of type, or a Joker if type < 0 */
+    private static Wuball ball(int type) {
+        Wuball ball = new Wuball();
+        if (type < 0)
+            ball.setJokerType();
+        else
+            ball.setType(type);
+        return ball;
+    }
+
+    /** fill numBalls random cells with random balls */
+    private static GameBoard randomBoard(int numBalls) {
+        GameBoard board = newBoard();
+        Random random = new Random(42);
+        int cells = board.size * board.size;
+        while (cells - board.getNumFreeSlots() < numBalls) {
+            int cell = random.nextInt(cells);
+            if (board.isEmpty(cell))
+                board.setWuball(cell, ball(random.nextInt(board.numGamePieces)));
+        }
+        return board;
+    }
+
+    /** about 10% full */
+    private static GameBoard sparseBoard() {
+        return randomBoard(size * size / 10);
+    }
+
+    /** about 75% full */
+    private static GameBoard denseBoard() {
+        return randomBoard(size * size * 3 / 4);
+    }
+
+    /** walls across every other row, with the gap at alternating ends */
+    private static GameBoard mazeBoard() {
+        GameBoard board = newBoard();
+        int size = board.size;
+        for (int i = 1; i < size; i += 2) {
+            int gap = (i / 2) % 2 == 0 ? size - 1 : 0;
+            for (int j = 0; j < size; j++) {
+                if (j != gap)
+                    board.setWuball(i * size + j, ball((i + j) % board.numGamePieces));
+            }
+        }
+        board.setWuball(0, ball(0));
+        return board;
+    }
+
+    /** @return the move with the longest route on board */
+    private static int longestRoute(GameBoard board) throws IllegalMoveException {
+        int cells = board.size * board.size;
+        int[] path = new int[cells];
+        int best = Move.NONE, bestLength = 0;
+        for (int start = 0; start < cells; start++) {
+            if (board.isEmpty(start))
+                continue;
+            for (int end = 0; end < cells; end++) {
+                if (!board.isEmpty(end))
+                    continue;
+                int length = board.findRoute(start, end, path);
+                if (length > bestLength) {
+                    bestLength = length;
+                    best = Move.pack(start, end);
+                }
+            }
+        }
+        return best;
+    }
+
+    private static void routes(Bench bench, String name, final GameBoard board)
+            throws Exception {
+        final int move = longestRoute(board);
+        final int start = Move.start(move), end = Move.end(move);
+        final int[] path = new int[board.size * board.size];
+
+        bench.run("findRoute." + name, new Bench.Op() {
+            public int run() throws Exception {
+                return board.findRoute(start, end, path);
+            }
+        });
+        bench.run("moveBall." + name + " (there and back)", new Bench.Op() {
+            public int run() throws Exception {
+                return board.moveBall(start, end, path) + board.moveBall(end, start, path);
+            }
+        });
+        bench.run("moveBall.cells." + name + " (there and back)", new Bench.Op() {
+            public int run() throws Exception {
+                return board.moveBall(board.new BoardCell(start / board.size, start % board.size),
+                        board.new BoardCell(end / board.size, end % board.size)).size()
+                        + board.moveBall(board.new BoardCell(end / board.size, end % board.size),
+                                board.new BoardCell(start / board.size, start % board.size))
+                                .size();
+            }
+        });
+    }
+
+    private static void connectFive(Bench bench) throws Exception {
+        // no two neighbors share a type, so there is never a line
+        final GameBoard noLines = newBoard();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++)
+                noLines.setWuball(i * size + j, ball((i + 2 * j) % noLines.numGamePieces));
+        }
+        final int middle = size / 2;
+        final int center = middle * size + middle;
+        bench.run("connectFive.none", new Bench.Op() {
+            public int run() {
+                return noLines.connectFive(center);
+            }
+        });
+
+        // XXXXX across the center of the middle row, removed and put back every time
+        final GameBoard plain = newBoard();
+        final Wuball[] plainRow = new Wuball[size];
+        for (int j = middle - 2; j <= middle + 2; j++)
+            plainRow[j] = ball(1);
+        bench.run("connectFive.line (+restore)", new Bench.Op() {
+            public int run() {
+                restoreRow(plain, middle, plainRow);
+                return plain.connectFive(center);
+            }
+        });
+
+        // XXJJJYY: the Jokers complete a line on both sides; needs 7 cells in a row
+        if (size < 7)
+            return;
+        final GameBoard jokers = newBoard();
+        final Wuball[] jokerRow = new Wuball[size];
+        for (int j = middle - 3; j <= middle + 3; j++)
+            jokerRow[j] = ball(j < middle - 1 ? 1 : j > middle + 1 ? 2 : -1);
+        bench.run("connectFive.jokers (+restore)", new Bench.Op() {
+            public int run() {
+                restoreRow(jokers, middle, jokerRow);
+                return jokers.connectFive(center);
+            }
+        });
+    }
+
+    private static void restoreRow(GameBoard board, int i, Wuball[] row) {
+        for (int j = 0; j < row.length; j++) {
+            if (row[j] != null)
+                board.setWuball(i * board.size + j, row[j]);
+        }
+    }
+
+    private static void placeBall(Bench bench, int freeSlots) throws Exception {
+        final GameBoard board = randomBoard(size * size - freeSlots);
+        bench.run("placeBall." + freeSlots + "free", new Bench.Op() {
+            public int run() throws Exception {
+                int cell = board.placeNextBall();
+                board.setWuball(cell, null);
+                return cell;
+            }
+        });
+    }
+
+    private static void lookahead(Bench bench) throws Exception {
+        final GameBoard board = newBoard();
+        bench.run("peek.3", new Bench.Op() {
+            public int run() {
+                return board.peek(3).size();
+            }
+        });
+        bench.run("peek.64", new Bench.Op() {
+            public int run() {
+                return board.peek(64).size();
+            }
+        });
+        bench.run("get.3", new Bench.Op() {
+            public int run() {
+                return board.get(3).size();
+            }
+        });
+        bench.run("lookahead.64", new Bench.Op() {
+            public int run() {
+                Lookahead next = board.lookahead(64);
+                int sum = 0;
+                for (int x = 0; x < 64; x++)
+                    sum += next.getType(x);
+                return sum;
+            }
+        });
+    }
+}
@@ -0,0 +1,111 @@
+package com.vincewu.wuballs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How the parallel searches scale with threads: the time for a complete
+ * hint (every legal move scored, no deadline) on a half full board, and the
+ * Monte Carlo playouts run per second, for 1, 2, 4, ... threads up to the
+ * number of cores. Speedup is against 1 thread; near-linear scaling shows
+ * as an efficiency close to 100%.
+ *
+ * Build with bench/build.sh, then run with:
+ * java -cp wuballs-bench.jar com.vincewu.wuballs.HintBenchmarks [filter]
+ * [-threads 1,2,8,...] [-size n] [-quick]
+ */
+class HintBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        String filter = null;
+        boolean quick = false;
+        int size = new GameOptions().size;
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for (int x = 0; x < args.length; x++) {
+            if (args[x].equals("-threads")) {
+                for (String count : args[++x].split(","))
+                    threadCounts.add(Integer.parseInt(count));
+            } else if (args[x].equals("-size")) {
+                size = Integer.parseInt(args[++x]);
+            } else if (args[x].equals("-quick")) {
+                quick = true;
+            } else {
+                filter = args[x];
+            }
+        }
+        if (threadCounts.isEmpty()) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int threads = 1; threads < cores; threads *= 2)
+                threadCounts.add(threads);
+            threadCounts.add(cores);
+        }
+        Bench bench = new Bench(filter);
+        bench.setBatch(1);
+        if (quick)
+            bench.setIterations(1, 3, 1000);
+
+        GameBoard board = halfFullBoard(size);
+        hint(bench, board, threadCounts);
+        playouts(bench, board, threadCounts, quick ? 500 : 2000);
+    }
+
+    /** a game played on to about half full, with the preview drawn */
+    private static GameBoard halfFullBoard(int size) throws GameOverException {
+        GameOptions options = new GameOptions();
+        options.size = size;
+        GameBoard board = new GameBoard(options, 123);
+        while (board.getNumFreeSlots() > size * size / 2)
+            board.placeNextBall();
+        board.lookahead(board.getBallsPerTurn());
+        return board;
+    }
+
+    private static void hint(Bench bench, final GameBoard board, List<Integer> threadCounts)
+            throws Exception {
+        double single = 0;
+        for (int threads : threadCounts) {
+            final HintEngine engine = new HintEngine(threads, 7);
+            engine.setTable(null); // score every move every time
+            engine.setBudgetNanos(Long.MAX_VALUE / 2); // no deadline
+            double nanos = bench.run("hint.threads" + threads, new Bench.Op() {
+                public int run() throws Exception {
+                    return engine.hint(board).evaluated;
+                }
+            });
+            engine.shutdown();
+            if (nanos == 0)
+                continue;
+            if (threads == 1)
+                single = nanos;
+            if (single > 0)
+                printSpeedup(threads, single / nanos);
+        }
+    }
+
+    /** Monte Carlo playouts per second, with a search budget of millis */
+    private static void playouts(Bench bench, GameBoard board, List<Integer> threadCounts,
+            long millis) throws Exception {
+        double single = 0;
+        for (int threads : threadCounts) {
+            String name = "mcs.playouts/s.threads" + threads;
+            if (!bench.matches(name))
+                continue;
+            MonteCarloSearch search = new MonteCarloSearch(threads, 7);
+            search.setBudget(millis / 4);
+            search.search(board); // warmup
+            search.setBudget(millis);
+            double perSecond = search.search(board).playouts * 1000.0 / millis;
+            search.shutdown();
+            System.out.println(String.format("%-40s %12.0f", name, perSecond));
+            if (threads == 1)
+                single = perSecond;
+            if (single > 0)
+                printSpeedup(threads, perSecond / single);
+        }
+    }
+
+    private static void printSpeedup(int threads, double speedup) {
+        System.out.println(String.format("%-40s %12.2f %9.0f%%", "  speedup", speedup, 100
+                * speedup / threads));
+    }
+}
@@ -0,0 +1,104 @@
+package com.vincewu.wuballs;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Game archives against the games written to them: random games appended
+ * over a few sessions, some ending with a record or index entry cut short,
+ * then read back in random order through windows of a few hundred bytes,
+ * so records start, end and cross window edges everywhere, and some are
+ * longer than the overlap. Every game must play back to the score and
+ * state it ended with.
+ */
+class ArchiveCheck extends Check {
+
+    private final List<Integer> scores = new ArrayList<Integer>();
+    private final List<String> states = new ArrayList<String>(); // how each game ended
+
+    void round() throws Exception {
+        File dataFile = File.createTempFile("wuballs-check", ".archive");
+        try {
+            check(dataFile, randomOptions(8));
+        } finally {
+            dataFile.delete();
+            GameArchive.indexFile(dataFile).delete();
+        }
+    }
+
+    private void check(File dataFile, GameOptions options) throws Exception {
+        scores.clear();
+        states.clear();
+        GameBoard board = new GameBoard(options, 0);
+        for (int session = 1 + random.nextInt(3); session > 0; session--) {
+            GameArchiveWriter writer = GameArchiveWriter.open(dataFile);
+            checkEquals((long) scores.size(), writer.getGames(), "games when reopened");
+            for (int g = random.nextInt(20); g > 0; g--)
+                play(board, writer);
+            if (random.nextInt(3) == 0) {
+                // cut short: a record that never ends, and a torn index entry
+                writer.begin(board);
+                writer.move(Move.pack(0, 1));
+                writer.flush();
+                writer.close();
+                RandomAccessFile index = new RandomAccessFile(GameArchive.indexFile(dataFile),
+                        "rw");
+                index.setLength(index.length() + 1 + random.nextInt(7));
+                index.close();
+            } else {
+                writer.close();
+            }
+        }
+
+        int window = 8 * (8 + random.nextInt(64));
+        GameArchive archive = new GameArchive(dataFile, window, random.nextInt(window));
+        try {
+            checkEquals((long) scores.size(), archive.size(), "games");
+            for (int n = 0; n < 2 * scores.size(); n++) {
+                int id = random.nextInt(scores.size());
+                String game = "game " + id + " with window " + window;
+                GameRecordReader reader = archive.reader(id);
+                check(reader.begin(), game + ": empty");
+                GameBoard replayBoard = new GameBoard(reader.getOptions(), 0);
+                checkEquals(scores.get(id), archive.play(id, replayBoard), game + ": score");
+                checkEquals(states.get(id), savedState(replayBoard), game + ": state");
+
+                GameReplay replay = GameReplay.read(archive.reader(id));
+                replay.replay(replay.getNumMoves(), replayBoard);
+                checkEquals(states.get(id), savedState(replayBoard), game + ": replay");
+            }
+        } finally {
+            archive.close();
+        }
+    }
+
+    /** play a random game on board, from a new seed, recorded by writer */
+    private void play(GameBoard board, GameArchiveWriter writer) throws Exception {
+        TurnResult turn = new TurnResult(board.size);
+        int[] moves = new int[board.maxMoves()];
+        int score = 0;
+        board.restart(random.nextLong());
+        for (int n = 0; n < board.getInitialBalls(); n++)
+            board.placeNextBall();
+        writer.begin(board);
+        try {
+            for (int m = random.nextInt(60); m > 0; m--) {
+                if (random.nextInt(10) == 0)
+                    writer.checkpoint(board, score);
+                int numMoves = board.listMoves(moves);
+                if (numMoves == 0)
+                    break;
+                int move = moves[random.nextInt(numMoves)];
+                writer.move(move);
+                score += Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+            }
+        } catch (GameOverException goe) {
+            // the board filled up
+        }
+        writer.end();
+        scores.add(score);
+        states.add(savedState(board));
+    }
+}
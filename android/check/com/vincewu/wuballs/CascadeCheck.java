@@ -0,0 +1,205 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+
+/**
+ * GameBoard.playTurn() against turns worked out on a copy of the board:
+ * random games with short lines and few types, so placed balls often make
+ * lines. A move that makes a line places nothing. Otherwise, with cascading
+ * rules, the lines through the placed balls are found on the board with
+ * every ball of the turn placed, all removed together, a ball in two lines
+ * once, and each placed ball making lines scores the balls not counted
+ * yet; without, placed balls stay put. A turn that fills the board still
+ * removes the lines its placed balls make before the game ends. No
+ * Jokers: LineIndexCheck covers what lines they make.
+ */
+class CascadeCheck extends Check {
+
+    private GameBoard board;
+    private GameRules rules;
+    private int size;
+
+    /**
+     * A full board but for two cells once the Y at 1 moves to 6: the balls
+     * placed run out after two of three, and the one at 22 makes a line
+     * whatever its type.
+     */
+    void cases() throws Exception {
+        String[] rows = { "YYXXY", "X.XXY", "XXYYX", "YYXXY", "YY.XX" };
+        GameOptions options = new GameOptions();
+        options.size = rows.length;
+        options.numGamePieces = 2;
+        options.playJoker = false;
+        options.rules.lineLength = 3;
+        options.rules.axes = GameRules.VERTICAL | GameRules.HORIZONTAL;
+        options.rules.ballsPerTurn = 3;
+        for (long seed = 0; seed < 20; seed++) {
+            board = new GameBoard(options, seed);
+            rules = board.getRules();
+            size = board.size;
+            for (int cell = 0; cell < size * size; cell++) {
+                char ch = rows[cell / size].charAt(cell % size);
+                if (ch != '.') {
+                    Wuball ball = new Wuball();
+                    ball.setType(ch - 'X');
+                    board.setWuball(cell, ball);
+                }
+            }
+            TurnResult turn = new TurnResult(size);
+            int[] before = pieces();
+            boolean over = false;
+            try {
+                board.playTurn(1, 6, turn);
+            } catch (GameOverException goe) {
+                over = true;
+            }
+            String when = "full board, seed " + seed;
+            check(over, when + ": game over");
+            checkEquals(2, turn.getNumPlaced(), when + ": balls placed");
+            check(turn.getPoints() > 0, when + ": line made as the board filled up scores");
+            compare(before, Move.pack(1, 6), turn, over, when);
+        }
+    }
+
+    void round() throws Exception {
+        GameOptions options = randomOptions(9);
+        options.numGamePieces = 2 + random.nextInt(3);
+        options.playJoker = false;
+        options.rules.lineLength = 3 + random.nextInt(2);
+        options.rules.axes = 1 + random.nextInt(GameRules.ALL_AXES);
+        options.rules.ballsPerTurn = 2 + random.nextInt(5);
+        board = new GameBoard(options, random.nextLong());
+        rules = board.getRules();
+        size = board.size;
+        TurnResult turn = new TurnResult(size);
+        int[] moves = new int[board.maxMoves()];
+        try {
+            for (int n = 0; n < board.getInitialBalls(); n++)
+                board.placeNextBall();
+            for (int step = 0; step < 100; step++) {
+                int numMoves = board.listMoves(moves);
+                if (numMoves == 0)
+                    break;
+                int move = moves[random.nextInt(numMoves)];
+                int[] before = pieces();
+                boolean over = false;
+                try {
+                    Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+                } catch (GameOverException goe) {
+                    over = true;
+                }
+                compare(before, move, turn, over, "step " + step + " with " + rules);
+                if (over)
+                    break;
+            }
+        } catch (GameOverException goe) {
+            // filled up with the first balls
+        }
+    }
+
+    /** check turn, played from the board before, against the same turn worked out here */
+    private void compare(int[] before, int move, TurnResult turn, boolean over, String when) {
+        int[] pieces = before.clone();
+        pieces[Move.end(move)] = pieces[Move.start(move)];
+        pieces[Move.start(move)] = -1;
+        boolean[] removed = new boolean[size * size];
+        int points = 0;
+        if (lines(pieces, Move.end(move), removed) > 0) {
+            check(turn.isConnected(), when + ": move made a line");
+            checkEquals(0, turn.getNumPlaced(), when + ": balls placed after a line");
+            points = rules.points(count(removed) - 1);
+        } else {
+            check(!turn.isConnected(), when + ": no line made");
+            checkEquals(over ? count(pieces, -1) : rules.ballsPerTurn, turn.getNumPlaced(), when
+                    + ": balls placed");
+            for (int n = 0; n < turn.getNumPlaced(); n++) {
+                int cell = turn.getPlaced(n);
+                check(pieces[cell] < 0, when + ": placed on a ball at " + cell);
+                pieces[cell] = turn.getPlacedPiece(n);
+            }
+            for (int n = 0; n < turn.getNumPlaced() && rules.cascade; n++) {
+                boolean[] line = new boolean[size * size];
+                if (lines(pieces, turn.getPlaced(n), line) == 0)
+                    continue;
+                int others = 0;
+                for (int cell = 0; cell < size * size; cell++) {
+                    if (line[cell] && !removed[cell] && cell != turn.getPlaced(n))
+                        others++;
+                    removed[cell] |= line[cell];
+                }
+                points += rules.points(others);
+            }
+        }
+
+        checkEquals(points, turn.getPoints(), when + ": points");
+        boolean[] turnRemoved = new boolean[size * size];
+        for (int n = 0; n < turn.getNumRemoved(); n++) {
+            check(!turnRemoved[turn.getRemoved(n)], when + ": removed twice");
+            turnRemoved[turn.getRemoved(n)] = true;
+        }
+        checkEquals(Arrays.toString(removed), Arrays.toString(turnRemoved), when + ": removed");
+        for (int cell = 0; cell < size * size; cell++) {
+            if (removed[cell])
+                pieces[cell] = -1;
+        }
+        checkEquals(Arrays.toString(pieces), Arrays.toString(pieces()), when + ": board");
+    }
+
+    /**
+     * mark the balls of the lines through cell in line, cell included if
+     * there are any
+     *
+     * @return number of lines
+     */
+    private int lines(int[] pieces, int cell, boolean[] line) {
+        int[] di = { 1, 0, 1, 1 }, dj = { 0, 1, 1, -1 };
+        int lines = 0;
+        for (int a = 0; a < 4; a++) {
+            if ((rules.axes & (1 << a)) == 0)
+                continue;
+            int back = stretch(pieces, cell, -di[a], -dj[a]);
+            int forward = stretch(pieces, cell, di[a], dj[a]);
+            if (back + forward + 1 < rules.lineLength)
+                continue;
+            lines++;
+            for (int n = -back; n <= forward; n++)
+                line[cell + n * (di[a] * size + dj[a])] = true;
+        }
+        return lines;
+    }
+
+    /** balls next to cell, going by (di, dj), of the type at cell */
+    private int stretch(int[] pieces, int cell, int di, int dj) {
+        int n = 0;
+        for (int i = cell / size + di, j = cell % size + dj; i >= 0 && i < size && j >= 0
+                && j < size && pieces[i * size + j] == pieces[cell]; i += di, j += dj)
+            n++;
+        return n;
+    }
+
+    private static int count(int[] pieces, int piece) {
+        int count = 0;
+        for (int at : pieces) {
+            if (at == piece)
+                count++;
+        }
+        return count;
+    }
+
+    private static int count(boolean[] cells) {
+        int count = 0;
+        for (boolean cell : cells) {
+            if (cell)
+                count++;
+        }
+        return count;
+    }
+
+    /** the type of the ball on each cell of the board, -1 if empty */
+    private int[] pieces() {
+        int[] pieces = new int[size * size];
+        for (int cell = 0; cell < pieces.length; cell++)
+            pieces[cell] = board.isEmpty(cell) ? -1 : board.getType(cell);
+        return pieces;
+    }
+}
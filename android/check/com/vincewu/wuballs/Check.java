@@ -0,0 +1,171 @@
+package com.vincewu.wuballs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Consistency checks for the game engine: each check drives a part of it
+ * through seeded random changes, and compares its answers after every step
+ * with the same answers worked out from scratch, the slow and obvious way.
+ * Rounds are seeded from -seed, so a failure replays with the same
+ * arguments.
+ *
+ * Build and run with plain Java, no Android SDK needed (see run.sh):
+ * java -cp bin/check com.vincewu.wuballs.Check [filter] [-seed n] [-rounds n]
+ */
+abstract class Check {
+
+    private static final int MAX_REPORTED = 10; // failures printed per check
+
+    protected Random random; // seeded for the round being run
+    private int roundNumber; // for failure reports, -1 in cases()
+    private int checks;
+    private int failures;
+
+    public static void main(String[] args) throws Exception {
+        Check[] all = { new PathCheck(), new LineIndexCheck(), new FreeCellsCheck(),
+                new UndoCheck(), new ZobristCheck(), new RecordCheck(), new ArchiveCheck(),
+                new SnapshotCheck(), new CascadeCheck(), new MoveGenCheck(),
+                new FreeSpaceCheck(), new TurnCheck(), new HintCheck(),
+                new MonteCarloCheck(), new SimulatorCheck() };
+
+        Pattern filter = Pattern.compile(".*");
+        long seed = 1;
+        int rounds = 100;
+        for (int x = 0; x < args.length; x++) {
+            if (args[x].equals("-seed"))
+                seed = Long.parseLong(args[++x]);
+            else if (args[x].equals("-rounds"))
+                rounds = Integer.parseInt(args[++x]);
+            else
+                filter = Pattern.compile(".*(" + args[x] + ").*");
+        }
+
+        int failed = 0;
+        for (Check check : all) {
+            String name = check.getClass().getSimpleName();
+            if (!filter.matcher(name).matches())
+                continue;
+            check.roundNumber = -1;
+            try {
+                check.cases();
+            } catch (Exception ex) {
+                check.check(false, "threw " + ex);
+            }
+            for (int round = 0; round < rounds; round++) {
+                check.roundNumber = round;
+                check.random = new Random(SplitMixRandom.seed(seed, round));
+                try {
+                    check.round();
+                } catch (Exception ex) {
+                    check.check(false, "threw " + ex);
+                }
+            }
+            System.out.println(String.format("%-24s %8d checks %6d failed", name, check.checks,
+                    check.failures));
+            if (check.failures > 0)
+                failed++;
+        }
+        if (failed > 0) {
+            System.out.println(failed + " checks failed");
+            System.exit(1);
+        }
+    }
+
+    /** checks of hand picked cases, run once before the rounds */
+    void cases() throws Exception {
+    }
+
+    /** one round of random changes, calling check() along the way */
+    abstract void round() throws Exception;
+
+    protected void check(boolean ok, String what) {
+        checks++;
+        if (ok)
+            return;
+        if (failures++ < MAX_REPORTED)
+            System.out.println(getClass().getSimpleName()
+                    + (roundNumber < 0 ? " cases: " : " round " + roundNumber + ": ") + what);
+    }
+
+    protected void checkEquals(Object expected, Object actual, String what) {
+        check(expected == null ? actual == null : expected.equals(actual), what + ": expected "
+                + expected + ", got " + actual);
+    }
+
+    /** a random board size, from GameBoard.MIN_SIZE up to max */
+    protected int randomSize(int max) {
+        return GameBoard.MIN_SIZE + random.nextInt(max - GameBoard.MIN_SIZE + 1);
+    }
+
+    /** options for a board of up to max x max, with a random engine, random numbers and rules */
+    protected GameOptions randomOptions(int max) {
+        GameOptions options = new GameOptions();
+        options.size = randomSize(max);
+        options.numGamePieces = 3 + random.nextInt(5);
+        options.playJoker = random.nextBoolean();
+        options.engineType = random.nextBoolean() ? GameBoard.EngineType.BITBOARD
+                : GameBoard.EngineType.OBJECTS;
+        options.randomType = random.nextBoolean() ? GameBoard.RandomType.SPLITMIX
+                : GameBoard.RandomType.LEGACY;
+        options.rules.lineLength = 4 + random.nextInt(2);
+        options.rules.ballsPerTurn = 2 + random.nextInt(2);
+        options.rules.cascade = random.nextBoolean();
+        return options;
+    }
+
+    /**
+     * place the first balls on board and play turns random moves; false if
+     * the game ended first or no ball can move at the end
+     */
+    protected boolean playRandom(GameBoard board, int turns) throws Exception {
+        TurnResult turn = new TurnResult(board.size);
+        int[] moves = new int[board.maxMoves()];
+        try {
+            for (int n = 0; n < board.getInitialBalls(); n++)
+                board.placeNextBall();
+            for (int x = 0; x < turns; x++) {
+                int numMoves = board.listMoves(moves);
+                if (numMoves == 0)
+                    return false;
+                int move = moves[random.nextInt(numMoves)];
+                Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+            }
+        } catch (GameOverException goe) {
+            return false;
+        }
+        return board.listMoves(moves) > 0;
+    }
+
+    /** whether move is one of the first numMoves of moves */
+    protected static boolean listed(int move, int[] moves, int numMoves) {
+        for (int m = 0; m < numMoves; m++) {
+            if (moves[m] == move)
+                return true;
+        }
+        return false;
+    }
+
+    /** the hash of the balls on board, from scratch: what getHash() must be */
+    protected static long scratchHash(GameBoard board) {
+        Zobrist zobrist = Zobrist.of(board.size, board.numGamePieces);
+        long hash = 0;
+        for (int cell = 0; cell < board.size * board.size; cell++) {
+            if (!board.isEmpty(cell))
+                hash ^= zobrist.key(board.isJoker(cell) ? board.numGamePieces : board
+                        .getType(cell), cell);
+        }
+        return hash;
+    }
+
+    /** what writeState() saves of board */
+    protected static String savedState(GameBoard board) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        board.writeState(new DataOutputStream(bytes));
+        return Arrays.toString(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,81 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+
+/**
+ * FreeCells against a plain array of which cells are empty: after every
+ * cell filled or emptied, the slots hold each empty cell exactly once, and
+ * nothing else. Cells filled and then restored in reverse order must leave
+ * the slots in the exact order they were in.
+ */
+class FreeCellsCheck extends Check {
+
+    private FreeCells free;
+    private boolean[] empty;
+
+    void round() {
+        int size = randomSize(12), cells = size * size;
+        free = new FreeCells(cells);
+        empty = new boolean[cells];
+        Arrays.fill(empty, true);
+        if (random.nextBoolean()) {
+            free.clear();
+            Arrays.fill(empty, false);
+        }
+        compare("new");
+
+        for (int step = 0; step < 500; step++) {
+            int cell = random.nextInt(cells);
+            if (random.nextBoolean()) {
+                int slot = free.remove(cell);
+                check((slot >= 0) == empty[cell], "remove " + cell + " returned " + slot);
+                empty[cell] = false;
+            } else {
+                free.add(cell);
+                empty[cell] = true;
+            }
+            compare("step " + step + " at " + cell);
+            if (step % 50 == 0)
+                removeAndRestore("step " + step);
+        }
+    }
+
+    /** fill some empty cells, then restore() them, newest first */
+    private void removeAndRestore(String when) {
+        String order = toString(free);
+        int[] removed = new int[random.nextInt(free.size() + 1)];
+        int[] slots = new int[removed.length];
+        for (int r = 0; r < removed.length; r++) {
+            removed[r] = free.get(random.nextInt(free.size()));
+            slots[r] = free.remove(removed[r]);
+        }
+        for (int r = removed.length - 1; r >= 0; r--)
+            free.restore(removed[r], slots[r]);
+
+        compare(when + ", restored " + removed.length);
+        checkEquals(order, toString(free), when + ": order after " + removed.length + " restored");
+    }
+
+    private static String toString(FreeCells free) {
+        int[] order = new int[free.size()];
+        for (int n = 0; n < order.length; n++)
+            order[n] = free.get(n);
+        return Arrays.toString(order);
+    }
+
+    private void compare(String when) {
+        boolean[] seen = new boolean[empty.length];
+        int count = 0;
+        for (int cell = 0; cell < empty.length; cell++) {
+            check(free.contains(cell) == empty[cell], when + ": contains " + cell);
+            if (empty[cell])
+                count++;
+        }
+        checkEquals(count, free.size(), when + ": size");
+        for (int n = 0; n < free.size(); n++) {
+            int cell = free.get(n);
+            check(empty[cell] && !seen[cell], when + ": slot " + n + " holds " + cell);
+            seen[cell] = true;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.vincewu.wuballs;
+
+/**
+ * Board health against the empty regions flooded from scratch: random
+ * games, with lines cleared, balls placed and now and then a rewind to an
+ * earlier checkpoint, so regions split, merge and come back. After every
+ * step each region size, mobility and count must match, and so must
+ * labelEmptyRegions().
+ */
+class FreeSpaceCheck extends Check {
+
+    private GameBoard board;
+    private int size;
+
+    void round() throws Exception {
+        board = new GameBoard(randomOptions(12), random.nextLong());
+        size = board.size;
+        TurnResult turn = new TurnResult(size);
+        int[] moves = new int[board.maxMoves()];
+        int checkpoint = -1;
+        compare("new game");
+        try {
+            for (int n = 0; n < board.getInitialBalls(); n++) {
+                board.placeNextBall();
+                compare("ball " + n);
+            }
+            for (int step = 0; step < 200; step++) {
+                if (checkpoint < 0 && random.nextInt(10) == 0)
+                    checkpoint = board.checkpoint();
+                int numMoves = board.listMoves(moves);
+                if (numMoves == 0)
+                    break;
+                int move = moves[random.nextInt(numMoves)];
+                Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+                compare("step " + step);
+                if (checkpoint >= 0 && random.nextInt(8) == 0) {
+                    board.rewind(checkpoint);
+                    checkpoint = -1;
+                    compare("step " + step + ", rewound");
+                }
+            }
+        } catch (GameOverException goe) {
+            compare("game over");
+        }
+    }
+
+    /** compare the health of the board with its regions flooded from scratch */
+    private void compare(String when) {
+        int cells = size * size;
+        int[] region = new int[cells]; // region number of each empty cell, 0 for balls
+        int[] regionSizes = new int[cells + 1];
+        int[] queue = new int[cells];
+        int regions = 0, largest = 0, free = 0;
+        for (int start = 0; start < cells; start++) {
+            if (!board.isEmpty(start) || region[start] != 0)
+                continue;
+            regions++;
+            int head = 0, tail = 0;
+            queue[tail++] = start;
+            region[start] = regions;
+            while (head < tail) {
+                int cell = queue[head++];
+                for (int d = 0; d < 4; d++) {
+                    int next = step(cell, d);
+                    if (next >= 0 && region[next] == 0 && board.isEmpty(next)) {
+                        region[next] = regions;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            regionSizes[regions] = tail;
+            largest = Math.max(largest, tail);
+            free += tail;
+        }
+
+        BoardHealth health = board.getHealth();
+        checkEquals(free, health.getFreeCells(), when + ": free cells");
+        checkEquals(regions, health.getRegions(), when + ": regions");
+        checkEquals(largest, health.getLargestRegion(), when + ": largest region");
+        checkEquals(1 - (double) largest / cells, health.danger(), when + ": danger");
+        checkEquals(regions, board.labelEmptyRegions(new int[cells]), when
+                + ": labelEmptyRegions()");
+
+        int movable = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            int mobility = 0;
+            if (region[cell] == 0) {
+                boolean[] counted = new boolean[regions + 1];
+                for (int d = 0; d < 4; d++) {
+                    int next = step(cell, d);
+                    if (next >= 0 && region[next] != 0 && !counted[region[next]]) {
+                        counted[region[next]] = true;
+                        mobility += regionSizes[region[next]];
+                    }
+                }
+                if (mobility > 0)
+                    movable++;
+            }
+            checkEquals(regionSizes[region[cell]], health.regionSize(cell), when
+                    + ": region size of " + cell);
+            checkEquals(mobility, health.mobility(cell), when + ": mobility of " + cell);
+        }
+        checkEquals(movable, health.getMovableBalls(), when + ": movable balls");
+    }
+
+    /** the cell next to cell: down, right, up or left for d 0 to 3; -1 off the board */
+    private int step(int cell, int d) {
+        int i = cell / size, j = cell % size;
+        switch (d) {
+        case 0:
+            return i + 1 < size ? cell + size : -1;
+        case 1:
+            return j + 1 < size ? cell + 1 : -1;
+        case 2:
+            return i > 0 ? cell - size : -1;
+        default:
+            return j > 0 ? cell - 1 : -1;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.vincewu.wuballs;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * HintEngine on positions from random games: the hint must be a legal move
+ * and leave the board as it was, and each worker's board must be rewound
+ * to the position hinted. With one thread and time to score every move, a
+ * hint read back from the transposition table must be the hint worked out
+ * without one. After shutdown(), hints throw RejectedExecutionException,
+ * with one thread or several.
+ */
+class HintCheck extends Check {
+
+    private GameBoard board;
+
+    void cases() throws Exception {
+        for (int threads = 1; threads <= 2; threads++) {
+            HintEngine engine = new HintEngine(threads, 1);
+            board = new GameBoard(new GameOptions(), 1);
+            for (int n = 0; n < board.getInitialBalls(); n++)
+                board.placeNextBall();
+            engine.hint(board);
+            engine.shutdown();
+            for (int x = 0; x < 2; x++) {
+                try {
+                    engine.hint(board);
+                    check(false, threads + " threads: hint after shutdown()");
+                } catch (RejectedExecutionException rex) {
+                    // as documented
+                }
+                engine.shutdown(); // again, harmlessly
+            }
+        }
+    }
+
+    void round() throws Exception {
+        GameOptions options = randomOptions(7);
+        board = new GameBoard(options, random.nextLong());
+        if (!playRandom(board, random.nextInt(12)))
+            return;
+        int ballsPerTurn = board.getBallsPerTurn();
+        long hash = board.getHash(), preview = board.getHash(ballsPerTurn);
+        String state = savedState(board);
+        int[] moves = new int[board.maxMoves()];
+        int numMoves = board.listMoves(moves);
+
+        int threads = 1 + random.nextInt(3);
+        HintEngine engine = new HintEngine(threads, random.nextLong());
+        engine.setSamples(1 + random.nextInt(3));
+        engine.setBudget(60000); // every move scored
+        HintEngine.Hint hint;
+        try {
+            hint = engine.hint(board);
+        } finally {
+            engine.shutdown();
+        }
+        String when = threads + " threads on " + board.size + "x" + board.size;
+        check(hint.isComplete(), when + ": hint " + hint + " not complete");
+        checkEquals(numMoves, hint.moves, when + ": moves");
+        check(listed(hint.move, moves, numMoves), when + ": hint " + hint + " isn't legal");
+        checkEquals(hash, board.getHash(), when + ": hash after the hint");
+        checkEquals(preview, board.getHash(ballsPerTurn), when + ": preview after the hint");
+        checkEquals(state, savedState(board), when + ": board after the hint");
+        for (int t = 0; t < threads; t++) {
+            GameBoard copy = engine.workerBoard(t);
+            if (copy == null)
+                continue; // the hint was over before this worker started
+            checkEquals(hash, copy.getHash(), when + ": hash of worker " + t + "'s board");
+            checkEquals(preview, copy.getHash(ballsPerTurn), when + ": preview of worker " + t
+                    + "'s board");
+        }
+
+        // the same search, with and without the table
+        long seed = random.nextLong();
+        int samples = 1 + random.nextInt(3);
+        HintEngine cached = new HintEngine(1, seed), plain = new HintEngine(1, seed);
+        cached.setSamples(samples);
+        plain.setSamples(samples);
+        cached.setBudget(60000);
+        plain.setBudget(60000);
+        cached.setTable(new TranspositionTable(1 << 12));
+        plain.setTable(null);
+        HintEngine.Hint first = cached.hint(board), expected = plain.hint(board);
+        HintEngine.Hint again = cached.hint(board);
+        checkEquals(expected.toString(), first.toString(), when + ": hint filling the table");
+        checkEquals(expected.move, again.move, when + ": hint from the table");
+        checkEquals((float) expected.score, (float) again.score, when
+                + ": score from the table");
+        checkEquals(numMoves, again.evaluated, when + ": moves scored from the table");
+        cached.shutdown();
+        plain.shutdown();
+    }
+}
@@ -0,0 +1,196 @@
+package com.vincewu.wuballs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * LineIndex against lines found by walking the board: findLines() and
+ * potential() after every ball placed, removed or replaced, under random
+ * line lengths, axes and Joker rules. Also the Joker cases of findLines()
+ * spelled out, such as XXJJJYY making two lines.
+ */
+class LineIndexCheck extends Check {
+
+    private BoardEngine board;
+    private LineIndex index;
+    private GameRules rules;
+    private int size;
+    private int joker; // index of Jokers in LineIndex: numTypes
+
+    void round() {
+        size = randomSize(12);
+        int numTypes = 1 + random.nextInt(5);
+        rules = new GameRules();
+        rules.lineLength = 2 + random.nextInt(Math.min(6, size) - 1);
+        rules.axes = 1 + random.nextInt(GameRules.ALL_AXES);
+        rules.wildJokers = random.nextBoolean();
+        setUp(numTypes);
+
+        int cells = size * size;
+        for (int step = 0; step < 400; step++) {
+            int cell = random.nextInt(cells);
+            board.clear(cell);
+            if (random.nextInt(3) > 0) {
+                int type = random.nextInt(numTypes + 1);
+                board.put(cell, Piece.of(type == numTypes ? PieceQueue.JOKER : type));
+            }
+            index.update(board, cell);
+
+            for (int n = 0; n < 4; n++) {
+                int at = random.nextInt(cells);
+                if (board.isEmpty(at)) {
+                    int piece = random.nextInt(numTypes + 1);
+                    checkEquals(potential(at, piece), index.potential(at, piece), "potential of "
+                            + piece + " at " + at + " with " + rules());
+                } else {
+                    checkEquals(lines(at), findLines(at), "lines at " + at + " with " + rules());
+                }
+            }
+        }
+    }
+
+    /** board and index for size, with no balls */
+    private void setUp(int numTypes) {
+        board = new BitBoardEngine(size);
+        index = new LineIndex(size, numTypes, rules);
+        joker = numTypes;
+    }
+
+    /** rows of pieces (X, Y, J, or . for empty) and the lines through a ball in them */
+    void cases() {
+        size = 9;
+        rules = new GameRules();
+        jokerCase("XXJJJYY", 3, 2);
+        jokerCase("XXJJJXX", 3, 1);
+        jokerCase("XXJJJYY", 1, 1);
+        jokerCase("JJJJJ", 2, 1);
+        jokerCase("XXJJ.YY", 2, 0);
+        jokerCase("XYJJJJ", 4, 1);
+        jokerCase("XXXXJ", 4, 1);
+        jokerCase("XXXJY", 0, 0);
+        rules.wildJokers = false;
+        jokerCase("XXJJJ", 0, 0);
+        jokerCase("JJJJJ", 0, 1);
+        jokerCase("XXXXXJ", 0, 1);
+    }
+
+    private void jokerCase(String row, int cell, int numLines) {
+        setUp(2);
+        for (int c = 0; c < row.length(); c++) {
+            char ch = row.charAt(c);
+            if (ch != '.')
+                board.put(c, Piece.of(ch == 'J' ? PieceQueue.JOKER : ch - 'X'));
+            index.update(board, c);
+        }
+        List<String> lines = findLines(cell);
+        checkEquals(numLines, lines.size(), row + " at " + cell + " " + lines);
+        checkEquals(lines(cell), lines, row + " at " + cell);
+    }
+
+    private List<String> findLines(int cell) {
+        int[] lines = new int[24];
+        int count = index.findLines(cell, lines);
+        List<String> found = new ArrayList<String>();
+        for (int n = 0; n < count; n++)
+            found.add(line(lines[n * 3], lines[n * 3 + 1], lines[n * 3 + 2]));
+        Collections.sort(found);
+        return found;
+    }
+
+    /**
+     * The lines through the ball at cell, straight from the board: on each
+     * axis, the longest stretch of balls around it that could all be one
+     * type. For a wild Joker that's one stretch per type; stretches of
+     * Jokers alone only count when there's no other.
+     */
+    private List<String> lines(int cell) {
+        int piece = piece(cell);
+        List<String> found = new ArrayList<String>();
+        for (int d = 0; d < 4; d++) {
+            if ((rules.axes & (1 << d)) == 0)
+                continue;
+            if (piece != joker || !rules.wildJokers) {
+                addLine(found, d, stretch(cell, d + 4, piece), stretch(cell, d, piece));
+                continue;
+            }
+            int jokersBack = jokers(cell, d + 4), jokersForward = jokers(cell, d);
+            boolean typed = false;
+            for (int type = 0; type < joker; type++) {
+                int back = stretch(cell, d + 4, type), forward = stretch(cell, d, type);
+                if (back > jokersBack || forward > jokersForward) {
+                    typed = true;
+                    addLine(found, d, back, forward);
+                }
+            }
+            if (!typed)
+                addLine(found, d, jokersBack, jokersForward);
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    /** add the line, unless it's too short or already there */
+    private void addLine(List<String> found, int d, int back, int forward) {
+        String line = line(d, back, forward);
+        if (back + forward + 1 >= rules.lineLength && !found.contains(line))
+            found.add(line);
+    }
+
+    /** length of the longest line through cell if piece were there, from the board */
+    private int potential(int cell, int piece) {
+        int best = 0;
+        for (int d = 0; d < 4; d++) {
+            if ((rules.axes & (1 << d)) == 0)
+                continue;
+            if (piece != joker || !rules.wildJokers) {
+                best = Math.max(best, stretch(cell, d, piece) + stretch(cell, d + 4, piece));
+                continue;
+            }
+            for (int type = 0; type < joker; type++)
+                best = Math.max(best, stretch(cell, d, type) + stretch(cell, d + 4, type));
+        }
+        return best + 1;
+    }
+
+    /** balls next to cell in direction d that could be part of a line of type */
+    private int stretch(int cell, int d, int type) {
+        int n = 0;
+        for (int at = next(cell, d); at >= 0; at = next(at, d)) {
+            int piece = piece(at);
+            if (piece != type && !(piece == joker && rules.wildJokers))
+                break;
+            n++;
+        }
+        return n;
+    }
+
+    /** Jokers next to cell in direction d */
+    private int jokers(int cell, int d) {
+        int n = 0;
+        for (int at = next(cell, d); at >= 0 && piece(at) == joker; at = next(at, d))
+            n++;
+        return n;
+    }
+
+    /** the cell next to cell in direction d, or -1 off the board */
+    private int next(int cell, int d) {
+        int i = cell / size + LineIndex.DI[d & 7], j = cell % size + LineIndex.DJ[d & 7];
+        return i < 0 || i >= size || j < 0 || j >= size ? -1 : i * size + j;
+    }
+
+    /** ball type at cell, joker, or -1 if empty */
+    private int piece(int cell) {
+        int code = board.getPiece(cell);
+        return code == Piece.EMPTY ? -1 : Piece.isJoker(code) ? joker : Piece.color(code);
+    }
+
+    private static String line(int d, int back, int forward) {
+        return d + " " + back + " " + forward;
+    }
+
+    private String rules() {
+        return size + "x" + size + " length " + rules.lineLength + " axes " + rules.axes
+                + (rules.wildJokers ? " wild" : "");
+    }
+}
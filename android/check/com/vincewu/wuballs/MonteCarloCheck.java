@@ -0,0 +1,51 @@
+package com.vincewu.wuballs;
+
+/**
+ * MonteCarloSearch on positions from random games, with or without a
+ * preview looked ahead at: the move must be legal, the board must be as it
+ * was (the preview included, with nothing more looked ahead at), and each
+ * worker's board must be rewound to the position searched.
+ */
+class MonteCarloCheck extends Check {
+
+    private GameBoard board;
+
+    void round() throws Exception {
+        GameOptions options = randomOptions(9);
+        board = new GameBoard(options, random.nextLong());
+        if (!playRandom(board, random.nextInt(12)))
+            return;
+        if (random.nextBoolean())
+            board.lookahead(3);
+        int upcoming = board.lookahead(0).size();
+        long hash = board.getHash(), preview = board.getHash(upcoming);
+        String state = savedState(board);
+        int[] moves = new int[board.maxMoves()];
+        int numMoves = board.listMoves(moves);
+
+        int threads = 1 + random.nextInt(3);
+        MonteCarloSearch search = new MonteCarloSearch(threads, random.nextLong());
+        search.setBudget(2);
+        search.setDepth(1 + random.nextInt(4));
+        MonteCarloSearch.Result result;
+        try {
+            result = search.search(board);
+        } finally {
+            search.close();
+        }
+        String when = threads + " threads on " + board.size + "x" + board.size + ", "
+                + upcoming + " upcoming";
+        check(listed(result.move, moves, numMoves), when + ": move " + result + " isn't legal");
+        check(result.playouts > 0, when + ": no playouts");
+        checkEquals(hash, board.getHash(), when + ": hash after the search");
+        checkEquals(upcoming, board.lookahead(0).size(), when + ": pieces looked ahead at");
+        checkEquals(preview, board.getHash(upcoming), when + ": preview after the search");
+        checkEquals(state, savedState(board), when + ": board after the search");
+        for (int t = 0; t < threads; t++) {
+            GameBoard copy = search.workerBoard(t);
+            checkEquals(hash, copy.getHash(), when + ": hash of worker " + t + "'s board");
+            checkEquals(preview, copy.getHash(upcoming), when + ": preview of worker " + t
+                    + "'s board");
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.vincewu.wuballs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MoveGenerator against moves found ball by ball: listMoves() must list
+ * every cell each ball can reach, once, in order of start cell. The
+ * ordering keys and moveLine() must match the line lengths, empty neighbor
+ * pairs and cut lines worked out on a copy of the board with the move
+ * made, and selectBest() must put the best rated moves first without
+ * losing any. Also the end ball of a run sliding along the run, which
+ * makes no line however long the run was.
+ */
+class MoveGenCheck extends Check {
+
+    private static final int NONE = -2; // an empty cell in a grid, see grid()
+
+    private GameBoard board;
+    private int size;
+    private boolean wild;
+    private int[] grid; // the board, see grid()
+
+    void cases() throws Exception {
+        GameOptions options = new GameOptions();
+        options.numGamePieces = 3;
+        for (int a = 0; a < 4; a++) {
+            board = new GameBoard(options, 1);
+            size = board.size;
+            wild = true;
+            int[] di = { 0, 1, 1, 1 }, dj = { 1, 0, 1, -1 };
+            int first = a == 3 ? size - 1 : 0, step = di[a] * size + dj[a];
+            for (int n = 0; n < 4; n++)
+                board.setWuball(first + n * step, ball(0));
+            grid = grid();
+            String run = "XXXX from " + first + " by " + step;
+            int slide = Move.pack(first + 3 * step, first + 4 * step);
+            checkEquals(1, board.moveLine(slide), run + ": moveLine of the end ball sliding");
+            checkEquals(-3 << 12, rating(slide, MoveGenerator.LINE), run
+                    + ": LINE key of the end ball sliding");
+            int around = Move.pack(first, first + 4 * step);
+            checkEquals(4, board.moveLine(around), run + ": moveLine of the first ball to the end");
+            checkEquals(0, rating(around, MoveGenerator.LINE), run
+                    + ": LINE key of the first ball to the end");
+            checkEquals(key(slide, MoveGenerator.LINE), rating(slide, MoveGenerator.LINE), run
+                    + ": reference LINE key");
+        }
+    }
+
+    void round() throws Exception {
+        GameOptions options = randomOptions(random.nextInt(4) == 0 ? 20 : 10);
+        options.rules.wildJokers = random.nextBoolean();
+        board = new GameBoard(options, random.nextLong());
+        size = board.size;
+        wild = options.rules.wildJokers;
+        try {
+            for (int n = 1 + random.nextInt(size * size - 1); n > 0; n--)
+                board.placeNextBall();
+        } catch (GameOverException goe) {
+            return;
+        }
+
+        grid = grid();
+        int[] moves = new int[board.maxMoves()];
+        int numMoves = board.listMoves(moves);
+        List<Integer> expected = reachableMoves();
+        List<Integer> listed = new ArrayList<Integer>();
+        for (int m = 0; m < numMoves; m++)
+            listed.add(moves[m]);
+        for (int m = 1; m < numMoves; m++)
+            check(Move.start(moves[m - 1]) <= Move.start(moves[m]), "moves out of start order");
+        checkEquals(sorted(expected), sorted(listed), "moves");
+
+        for (int m = 0; m < numMoves; m++)
+            checkEquals(line(after(moves[m]), Move.end(moves[m]), grid[Move.start(moves[m])]),
+                    board.moveLine(moves[m]), "moveLine of " + Move.start(moves[m]) + "->"
+                            + Move.end(moves[m]));
+        for (int ordering = 1; ordering <= 7; ordering++) {
+            int[] keys = new int[numMoves];
+            board.rateMoves(moves, numMoves, ordering, keys);
+            for (int m = 0; m < numMoves; m++)
+                checkEquals(key(moves[m], ordering), keys[m], "ordering " + ordering + " key of "
+                        + Move.start(moves[m]) + "->" + Move.end(moves[m]));
+        }
+
+        int[] keys = new int[numMoves];
+        board.rateMoves(moves, numMoves, MoveGenerator.LINE | MoveGenerator.MOBILITY
+                | MoveGenerator.BLOCKING, keys);
+        Map<Integer, Integer> rated = new HashMap<Integer, Integer>();
+        for (int m = 0; m < numMoves; m++)
+            rated.put(moves[m], keys[m]);
+        int keep = random.nextInt(numMoves + 1);
+        MoveGenerator.selectBest(moves, keys, numMoves, keep);
+        listed.clear();
+        for (int m = 0; m < numMoves; m++) {
+            listed.add(moves[m]);
+            checkEquals(rated.get(moves[m]), keys[m], "key moved with its move");
+            if (m > 0 && m < keep)
+                check(keys[m - 1] >= keys[m], "best " + keep + " out of order at " + m);
+            if (m >= keep && keep > 0)
+                check(keys[keep - 1] >= keys[m], "move " + m + " better than the best " + keep);
+        }
+        checkEquals(sorted(expected), sorted(listed), "moves after selectBest");
+    }
+
+    /** every move, from each ball to each empty cell it can reach stepping up, down, left, right */
+    private List<Integer> reachableMoves() {
+        List<Integer> moves = new ArrayList<Integer>();
+        int cells = size * size;
+        int[] queue = new int[cells];
+        for (int start = 0; start < cells; start++) {
+            if (board.isEmpty(start))
+                continue;
+            boolean[] seen = new boolean[cells];
+            int head = 0, tail = 0;
+            queue[tail++] = start;
+            seen[start] = true;
+            while (head < tail) {
+                int cell = queue[head++];
+                for (int d = 0; d < 4; d++) {
+                    int next = step(cell, d);
+                    if (next >= 0 && !seen[next] && board.isEmpty(next)) {
+                        seen[next] = true;
+                        queue[tail++] = next;
+                        moves.add(Move.pack(start, next));
+                    }
+                }
+            }
+        }
+        return moves;
+    }
+
+    /** the ordering key of move, from the board before and after the move */
+    private int key(int move, int ordering) {
+        int start = Move.start(move), end = Move.end(move);
+        int piece = grid[start];
+        int[] after = after(move);
+        int key = 0;
+        if ((ordering & MoveGenerator.LINE) != 0)
+            key += (line(after, end, piece) - line(grid, start, piece)) << 12;
+        if ((ordering & MoveGenerator.MOBILITY) != 0)
+            key += (emptyPairs(after) - emptyPairs(grid)) << 8;
+        if ((ordering & MoveGenerator.BLOCKING) != 0)
+            key -= cut(after, end, piece);
+        return key;
+    }
+
+    /** the key rateMoves() gives move */
+    private int rating(int move, int ordering) {
+        int[] keys = new int[1];
+        board.rateMoves(new int[] { move }, 1, ordering, keys);
+        return keys[0];
+    }
+
+    /** the piece on each cell of the board: type, PieceQueue.JOKER, or NONE if empty */
+    private int[] grid() {
+        int[] grid = new int[size * size];
+        for (int cell = 0; cell < grid.length; cell++)
+            grid[cell] = board.isEmpty(cell) ? NONE : board.isJoker(cell) ? PieceQueue.JOKER
+                    : board.getType(cell);
+        return grid;
+    }
+
+    /** grid with move made */
+    private int[] after(int move) {
+        int[] after = grid.clone();
+        after[Move.end(move)] = after[Move.start(move)];
+        after[Move.start(move)] = NONE;
+        return after;
+    }
+
+    /** pairs of empty cells side by side */
+    private int emptyPairs(int[] grid) {
+        int pairs = 0;
+        for (int cell = 0; cell < size * size; cell++) {
+            for (int d = 0; d < 2; d++) { // down and right: each pair once
+                int next = step(cell, d);
+                if (next >= 0 && grid[cell] == NONE && grid[next] == NONE)
+                    pairs++;
+            }
+        }
+        return pairs;
+    }
+
+    /** length of the longest line piece is part of at cell, the cell included */
+    private int line(int[] grid, int cell, int piece) {
+        int best = 0;
+        for (int a = 0; a < 4; a++) {
+            for (int type = 0; type < board.numGamePieces; type++) {
+                if (type == piece || (piece == PieceQueue.JOKER && wild))
+                    best = Math.max(best, stretches(grid, cell, a, type));
+            }
+            if (piece == PieceQueue.JOKER && !wild)
+                best = Math.max(best, stretches(grid, cell, a, piece));
+        }
+        return best + 1;
+    }
+
+    /**
+     * the longest line of another type that piece, at cell, cuts: the balls
+     * on both sides that could be of one type
+     */
+    private int cut(int[] grid, int cell, int piece) {
+        if (piece == PieceQueue.JOKER && wild)
+            return 0;
+        int best = 0;
+        for (int a = 0; a < 4; a++) {
+            for (int type = wild ? 0 : PieceQueue.JOKER; type < board.numGamePieces; type++) {
+                if (type != piece)
+                    best = Math.max(best, stretches(grid, cell, a, type));
+            }
+        }
+        return best;
+    }
+
+    /** balls on both sides of cell on axis a (0 to 3) that could be part of a line of type */
+    private int stretches(int[] grid, int cell, int a, int type) {
+        int[] di = { 1, 0, 1, 1 }, dj = { 0, 1, 1, -1 };
+        return stretch(grid, cell, di[a], dj[a], type) + stretch(grid, cell, -di[a], -dj[a], type);
+    }
+
+    /** balls next to cell, going by (di, dj), that could be part of a line of type */
+    private int stretch(int[] grid, int cell, int di, int dj, int type) {
+        int n = 0;
+        for (int i = cell / size + di, j = cell % size + dj; i >= 0 && i < size && j >= 0
+                && j < size; i += di, j += dj) {
+            int at = grid[i * size + j];
+            if (at == NONE)
+                break;
+            if (!(at == PieceQueue.JOKER ? type == PieceQueue.JOKER || wild : at == type))
+                break;
+            n++;
+        }
+        return n;
+    }
+
+    /** a new ball of type */
+    private static Wuball ball(int type) {
+        Wuball ball = new Wuball();
+        ball.setType(type);
+        return ball;
+    }
+
+    /** the cell next to cell: down, right, up or left for d 0 to 3; -1 off the board */
+    private int step(int cell, int d) {
+        int i = cell / size, j = cell % size;
+        switch (d) {
+        case 0:
+            return i + 1 < size ? cell + size : -1;
+        case 1:
+            return j + 1 < size ? cell + 1 : -1;
+        case 2:
+            return i > 0 ? cell - size : -1;
+        default:
+            return j > 0 ? cell - 1 : -1;
+        }
+    }
+
+    private static String sorted(List<Integer> moves) {
+        Integer[] sorted = moves.toArray(new Integer[moves.size()]);
+        Arrays.sort(sorted);
+        return Arrays.toString(sorted);
+    }
+}
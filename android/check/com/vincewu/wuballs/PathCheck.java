@@ -0,0 +1,164 @@
+package com.vincewu.wuballs;
+
+/**
+ * PathFinder against a plain breadth-first search that works out neighbors
+ * from row and column: routes must be shortest, step only between cells
+ * side by side (never across the edge from the end of one row to the start
+ * of the next, or off the top or bottom), and go through empty cells only.
+ * The cells reachable from a ball and the empty regions must match too.
+ * Both board engines, on random boards filled from empty to nearly full.
+ */
+class PathCheck extends Check {
+
+    private BoardEngine board;
+    private PathFinder finder;
+    private int size;
+
+    void round() {
+        setUp(randomSize(12), random.nextBoolean());
+        int cells = size * size;
+        int density = random.nextInt(10);
+        for (int cell = 0; cell < cells; cell++) {
+            if (random.nextInt(10) < density)
+                board.put(cell, Piece.of(random.nextInt(5)));
+        }
+        compare("density " + density, 8);
+    }
+
+    /** boards where the only way out of a ball would be across an edge */
+    void cases() {
+        for (int size = 5; size <= 7; size++) {
+            for (int bitboard = 0; bitboard < 2; bitboard++) {
+                int cells = size * size;
+                // the last cell of a row and the first of the next
+                for (int row = 0; row < size - 1; row++) {
+                    edgeCase(size, bitboard == 1, row * size + size - 1, row * size + size);
+                    edgeCase(size, bitboard == 1, row * size + size, row * size + size - 1);
+                }
+                // the first cell and the last, top left and bottom right
+                edgeCase(size, bitboard == 1, 0, cells - 1);
+                edgeCase(size, bitboard == 1, cells - 1, 0);
+                edgeCase(size, bitboard == 1, size - 1, cells - size);
+            }
+        }
+    }
+
+    /** a ball at start and end left empty on a full board: no route, nothing reachable */
+    private void edgeCase(int size, boolean bitboard, int start, int end) {
+        setUp(size, bitboard);
+        for (int cell = 0; cell < size * size; cell++) {
+            if (cell != end)
+                board.put(cell, Piece.of(0));
+        }
+        compare(size + "x" + size + " full but " + end, 1);
+    }
+
+    private void setUp(int size, boolean bitboard) {
+        this.size = size;
+        board = bitboard ? new BitBoardEngine(size) : new ObjectBoardEngine(size);
+        finder = new PathFinder(size);
+    }
+
+    /**
+     * routes from about one ball in balls to each empty cell, the cells
+     * reachable from those balls, and the regions
+     */
+    private void compare(String when, int balls) {
+        int cells = size * size;
+        when = when + " on " + board.getClass().getSimpleName();
+        int[] path = new int[cells];
+        long[] mask = CellMask.create(cells);
+        for (int start = 0; start < cells; start++) {
+            if (board.isEmpty(start) || (balls > 1 && random.nextInt(balls) > 0))
+                continue;
+            int[] distance = distances(start);
+            int reachable = 0;
+            for (int end = 0; end < cells; end++) {
+                if (!board.isEmpty(end))
+                    continue;
+                if (distance[end] > 0)
+                    reachable++;
+                String route = when + ": " + start + "->" + end;
+                checkEquals(distance[end] > 0, finder.hasPath(board, start, end), route
+                        + " hasPath");
+                int length = finder.findPath(board, start, end, path);
+                checkEquals(distance[end] > 0 ? distance[end] + 1 : 0, length, route
+                        + " length");
+                if (length > 0)
+                    checkRoute(path, length, start, end, route);
+            }
+
+            checkEquals(reachable, finder.reachable(board, start, mask), when
+                    + ": reachable from " + start);
+            for (int cell = 0; cell < cells; cell++) {
+                boolean expected = board.isEmpty(cell) && distance[cell] > 0;
+                check(CellMask.contains(mask, cell) == expected, when + ": " + cell
+                        + " reachable from " + start);
+            }
+        }
+
+        int[] labels = new int[cells];
+        int regions = finder.labelRegions(board, labels);
+        int expected = 0;
+        int[] region = new int[cells]; // region number of each empty cell, from scratch
+        for (int cell = 0; cell < cells; cell++) {
+            if (!board.isEmpty(cell) || region[cell] != 0)
+                continue;
+            expected++;
+            int[] distance = distances(cell);
+            for (int other = 0; other < cells; other++) {
+                if (other == cell || distance[other] > 0)
+                    region[other] = expected;
+            }
+        }
+        checkEquals(expected, regions, when + ": regions");
+        // the same regions if numbered the same way: in order of their first cell
+        int[] renumber = new int[cells + 1];
+        int numbered = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (labels[cell] > 0 && labels[cell] <= cells && renumber[labels[cell]] == 0)
+                renumber[labels[cell]] = ++numbered;
+            int label = labels[cell] > 0 && labels[cell] <= cells ? renumber[labels[cell]]
+                    : labels[cell];
+            checkEquals(region[cell], label, when + ": region of " + cell);
+        }
+    }
+
+    /** each cell of the route must be empty and next to the one before */
+    private void checkRoute(int[] path, int length, int start, int end, String route) {
+        checkEquals(start, path[0], route + " starts");
+        checkEquals(end, path[length - 1], route + " ends");
+        for (int n = 1; n < length; n++) {
+            int from = path[n - 1], to = path[n];
+            int di = to / size - from / size, dj = to % size - from % size;
+            check(to >= 0 && to < size * size && Math.abs(di) + Math.abs(dj) == 1, route
+                    + " steps from " + from + " to " + to);
+            check(board.isEmpty(to), route + " goes through the ball at " + to);
+        }
+    }
+
+    /**
+     * hops from start to each empty cell it can reach, stepping up, down,
+     * left and right; 0 where it can't
+     */
+    private int[] distances(int start) {
+        int cells = size * size;
+        int[] distance = new int[cells];
+        int[] queue = new int[cells];
+        int head = 0, tail = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            int i = cell / size, j = cell % size;
+            int[] next = { i > 0 ? cell - size : -1, j + 1 < size ? cell + 1 : -1,
+                    i + 1 < size ? cell + size : -1, j > 0 ? cell - 1 : -1 };
+            for (int at : next) {
+                if (at >= 0 && at != start && distance[at] == 0 && board.isEmpty(at)) {
+                    distance[at] = distance[cell] + 1;
+                    queue[tail++] = at;
+                }
+            }
+        }
+        return distance;
+    }
+}
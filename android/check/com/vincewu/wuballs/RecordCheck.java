@@ -0,0 +1,129 @@
+package com.vincewu.wuballs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Game records against the games they were written from: a few random
+ * games with random options, written with checkpoints here and there, must
+ * read back with the same options and seed, and replay(n) must give the
+ * state and score the game had after n moves, whichever checkpoint it
+ * starts from. GameReplay.play() must end on the final state and score.
+ * Also varints at the edges of their byte lengths, and five byte varints
+ * past the 31 bits of an int, which must be rejected.
+ */
+class RecordCheck extends Check {
+
+    /** a game as it was played: the board it ended on, and its states and scores move by move */
+    private static class Game {
+        final GameBoard board;
+        final List<String> states = new ArrayList<String>();
+        final List<Integer> scores = new ArrayList<Integer>();
+
+        Game(GameBoard board) {
+            this.board = board;
+        }
+    }
+
+    void cases() throws Exception {
+        int[] values = { 0, 1, 0x7F, 0x80, 0x3FFF, 0x4000, (1 << 28) - 1, 1 << 28,
+                Integer.MAX_VALUE };
+        for (int value : values) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Varint.write(new DataOutputStream(bytes), value);
+            checkEquals(value, Varint.read(new DataInputStream(new ByteArrayInputStream(bytes
+                    .toByteArray()))), "varint " + value);
+        }
+        for (int last = 0x08; last < 0x80; last++) {
+            byte[] varint = { -1, -1, -1, -1, (byte) last };
+            try {
+                int value = Varint.read(new DataInputStream(new ByteArrayInputStream(varint)));
+                check(false, "varint ending in " + last + " read as " + value);
+            } catch (IOException ioex) {
+                check(true, "varint ending in " + last + " rejected");
+            }
+        }
+    }
+
+    void round() throws Exception {
+        GameOptions options = randomOptions(10);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameRecordWriter writer = new GameRecordWriter(bytes);
+        List<Game> games = new ArrayList<Game>();
+        for (int g = 1 + random.nextInt(3); g > 0; g--)
+            games.add(play(new GameBoard(options, random.nextLong()), writer));
+        writer.flush();
+        byte[] record = bytes.toByteArray();
+
+        GameRecordReader reader = new GameRecordReader(new ByteArrayInputStream(record));
+        for (int g = 0; g < games.size(); g++) {
+            Game game = games.get(g);
+            GameReplay replay = GameReplay.read(reader);
+            if (replay == null) {
+                check(false, "game " + g + " missing");
+                return;
+            }
+            check(reader.fits(game.board), "game " + g + ": options");
+            checkEquals(game.board.getSeed(), replay.getSeed(), "game " + g + ": seed");
+            checkEquals(game.states.size() - 1, replay.getNumMoves(), "game " + g + ": moves");
+
+            GameBoard board = replay.newBoard();
+            for (int n = 0; n <= replay.getNumMoves() && n < game.states.size(); n++) {
+                int score = replay.replay(n, board);
+                checkEquals(game.states.get(n), savedState(board), "game " + g + ", move " + n);
+                checkEquals(game.scores.get(n), score, "game " + g + ", score after move " + n);
+            }
+        }
+        check(GameReplay.read(reader) == null, "games after the last");
+
+        reader = new GameRecordReader(new ByteArrayInputStream(record));
+        for (int g = 0; g < games.size() && reader.begin(); g++) {
+            Game game = games.get(g);
+            GameBoard board = new GameBoard(reader.getOptions(), 0);
+            int score = GameReplay.play(reader, board, new TurnResult(board.size));
+            int last = game.states.size() - 1;
+            checkEquals(game.scores.get(last), score, "game " + g + ": final score");
+            checkEquals(game.states.get(last), savedState(board), "game " + g + ": final state");
+        }
+    }
+
+    /** play a random game on board, recorded by writer */
+    private Game play(GameBoard board, GameRecordWriter writer) throws Exception {
+        Game game = new Game(board);
+        TurnResult turn = new TurnResult(board.size);
+        int[] moves = new int[board.maxMoves()];
+        int score = 0;
+        for (int n = 0; n < board.getInitialBalls(); n++)
+            board.placeNextBall();
+        writer.begin(board);
+        game.states.add(savedState(board));
+        game.scores.add(score);
+        try {
+            for (int m = 0; m < 100; m++) {
+                if (random.nextInt(8) == 0)
+                    writer.checkpoint(board, score);
+                int numMoves = board.listMoves(moves);
+                if (numMoves == 0)
+                    break;
+                int move = moves[random.nextInt(numMoves)];
+                writer.move(move);
+                try {
+                    score += Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+                } finally {
+                    // also when the game is over: replays end the same way
+                    game.states.add(savedState(board));
+                    game.scores.add(score);
+                }
+            }
+        } catch (GameOverException goe) {
+            // the board filled up
+        }
+        writer.end();
+        return game;
+    }
+}
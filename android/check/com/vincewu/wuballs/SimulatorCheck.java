@@ -0,0 +1,55 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+
+/**
+ * Simulator batches must play out the same on any number of threads: the
+ * same scores and game lengths for a seed, random moves, with one thread
+ * and with several. Also the batch of the command line defaults with seed
+ * 7, pinned to its totals: a change there means the games a seed plays
+ * have changed.
+ */
+class SimulatorCheck extends Check {
+
+    void cases() throws Exception {
+        GameOptions options = new GameOptions();
+        options.engineType = GameBoard.EngineType.BITBOARD;
+        options.randomType = GameBoard.RandomType.SPLITMIX;
+        for (int threads = 1; threads <= 4; threads *= 4) {
+            SimulationReport report = run(options, threads, 2000, 7);
+            checkEquals(57713L, report.getTotalMoves(), threads + " threads: moves");
+            checkEquals(20739L, Math.round(report.getMeanScore() * 1000), threads
+                    + " threads: mean score, in thousandths");
+        }
+    }
+
+    void round() throws Exception {
+        GameOptions options = randomOptions(9);
+        int games = 1 + random.nextInt(20);
+        long seed = random.nextLong();
+        int threads = 2 + random.nextInt(4);
+        String one = outcome(run(options, 1, games, seed));
+        String several = outcome(run(options, threads, games, seed));
+        checkEquals(one, several, games + " games with " + options.rules + ", " + threads
+                + " threads against 1");
+    }
+
+    private static SimulationReport run(GameOptions options, int threads, int games, long seed)
+            throws Exception {
+        Simulator simulator = new Simulator(options, new RandomMovePolicy());
+        simulator.setThreads(threads);
+        simulator.setMaxMoves(500);
+        return simulator.run(games, seed);
+    }
+
+    /** the sorted scores and lengths of the games, by percentile */
+    private static String outcome(SimulationReport report) {
+        int[] scores = new int[101], lengths = new int[101];
+        for (int p = 0; p <= 100; p++) {
+            scores[p] = report.getScorePercentile(p);
+            lengths[p] = report.getLengthPercentile(p);
+        }
+        return report.getTotalMoves() + " moves, scores " + Arrays.toString(scores)
+                + ", lengths " + Arrays.toString(lengths);
+    }
+}
@@ -0,0 +1,206 @@
+package com.vincewu.wuballs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Snapshots against the games they were saved from: a random game saved
+ * and restored into a board in another state must come back exactly, hash
+ * and board health included, and play on the same way. Snapshots with a
+ * byte changed or cut short must either restore into a consistent game, or
+ * be rejected with the board left as it was. Also hand-made states with
+ * pieces, free cells or counts out of range, which must be rejected.
+ */
+class SnapshotCheck extends Check {
+
+    private static final byte[] MINUS_ONE = { -1, -1, -1, -1, 0x0F }; // as a varint
+
+    void cases() throws Exception {
+        GameOptions options = new GameOptions();
+        options.playJoker = false;
+        GameBoard board = new GameBoard(options, 1);
+        for (int n = 0; n < board.getInitialBalls(); n++)
+            board.placeNextBall();
+        int cells = board.size * board.size;
+        readState(board, handMade(cells, 2, null, null), true, "ball of type 0");
+        readState(board, handMade(cells, 0x80, null, null), false, "moved ball of no type");
+        readState(board, handMade(cells, 1, null, null), false, "Joker without Jokers");
+        readState(board, handMade(cells, 0, MINUS_ONE, null), false, "free cell -1");
+        readState(board, handMade(cells, 0, null, MINUS_ONE), false, "-1 upcoming pieces");
+    }
+
+    void round() throws Exception {
+        GameOptions options = randomOptions(10);
+        GameBoard board = randomGame(options);
+        int selection = -1;
+        for (int cell = 0; cell < board.size * board.size && selection < 0; cell++) {
+            if (!board.isEmpty(cell) && random.nextInt(4) == 0)
+                selection = cell;
+        }
+        int score = random.nextInt(1000);
+        byte[] snapshot = GameSnapshot.save(board, score, selection);
+
+        GameBoard restored = randomGame(options);
+        GameSnapshot saved = GameSnapshot.restore(snapshot, restored);
+        checkEquals(score, saved.score, "score");
+        checkEquals(selection, saved.selection, "selection");
+        checkEquals(state(board), state(restored), "restored");
+        playOn(board, restored);
+
+        for (int n = 0; n < 20; n++) {
+            byte[] damaged = snapshot.clone();
+            int at = random.nextInt(damaged.length);
+            damaged[at] ^= 1 + random.nextInt(255);
+            restoreDamaged(damaged, options, "byte " + at + " changed");
+        }
+        for (int length = 0; length < snapshot.length; length++) {
+            byte[] cut = new byte[length];
+            System.arraycopy(snapshot, 0, cut, 0, length);
+            check(!restoreDamaged(cut, options, "cut to " + length), "cut to " + length
+                    + " accepted");
+        }
+        int empty = 0;
+        while (empty < board.size * board.size && !board.isEmpty(empty))
+            empty++;
+        if (empty < board.size * board.size) {
+            byte[] emptySelection = GameSnapshot.save(board, score, empty);
+            check(!restoreDamaged(emptySelection, options, "empty cell selected"),
+                    "selection of an empty cell accepted");
+        }
+    }
+
+    /** a game with random options, a few random moves in */
+    private GameBoard randomGame(GameOptions options) throws Exception {
+        GameBoard board = new GameBoard(options, random.nextLong());
+        TurnResult turn = new TurnResult(board.size);
+        int[] moves = new int[board.maxMoves()];
+        try {
+            for (int n = 0; n < board.getInitialBalls(); n++)
+                board.placeNextBall();
+            for (int m = random.nextInt(20); m > 0; m--) {
+                int numMoves = board.listMoves(moves);
+                if (numMoves == 0)
+                    break;
+                int move = moves[random.nextInt(numMoves)];
+                Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+            }
+        } catch (GameOverException goe) {
+            // a full board is a state too
+        }
+        board.lookahead(random.nextInt(6));
+        return board;
+    }
+
+    /** play the same random moves on both boards, which must stay the same */
+    private void playOn(GameBoard board, GameBoard restored) throws Exception {
+        TurnResult turn = new TurnResult(board.size);
+        int[] moves = new int[board.maxMoves()];
+        for (int m = 0; m < 10; m++) {
+            int numMoves = board.listMoves(moves);
+            if (numMoves == 0)
+                return;
+            int move = moves[random.nextInt(numMoves)];
+            boolean over = false, restoredOver = false;
+            try {
+                Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+            } catch (GameOverException goe) {
+                over = true;
+            }
+            try {
+                Simulator.playTurn(restored, Move.start(move), Move.end(move), turn);
+            } catch (GameOverException goe) {
+                restoredOver = true;
+            }
+            checkEquals(over, restoredOver, "game over after move " + m);
+            checkEquals(state(board), state(restored), "move " + m + " after the restore");
+            if (over)
+                return;
+        }
+    }
+
+    /**
+     * restore a damaged snapshot into a game in progress: it must be
+     * rejected and leave the game alone, or give a consistent game
+     *
+     * @return whether it was accepted
+     */
+    private boolean restoreDamaged(byte[] snapshot, GameOptions options, String what)
+            throws Exception {
+        GameBoard board = randomGame(options);
+        String before = state(board);
+        try {
+            GameSnapshot.restore(snapshot, board);
+        } catch (IOException ioex) {
+            checkEquals(before, state(board), what + ", rejected: " + ioex.getMessage());
+            return false;
+        } catch (RuntimeException rex) {
+            check(false, what + ": threw " + rex);
+            return false;
+        }
+        checkEquals(scratchHash(board), board.getHash(), what + ", accepted: hash");
+        int empty = 0;
+        for (int cell = 0; cell < board.size * board.size; cell++) {
+            if (board.isEmpty(cell))
+                empty++;
+        }
+        checkEquals(empty, board.getNumFreeSlots(), what + ", accepted: free slots");
+        checkEquals(empty, board.getHealth().getFreeCells(), what + ", accepted: free cells");
+        return true;
+    }
+
+    /** read state into board, which must be accepted, or rejected with the board left alone */
+    private void readState(GameBoard board, byte[] state, boolean ok, String what)
+            throws IOException {
+        String before = state(board);
+        try {
+            board.readState(new DataInputStream(new ByteArrayInputStream(state)));
+            check(ok, what + ": accepted");
+        } catch (IOException ioex) {
+            check(!ok, what + ": rejected: " + ioex.getMessage());
+            checkEquals(before, state(board), what + ": rejected");
+        } catch (RuntimeException rex) {
+            check(false, what + ": threw " + rex);
+        }
+    }
+
+    /**
+     * the state of an empty board but for code at cell 0, with the varints
+     * of the first free cell and of the number of upcoming pieces when not
+     * null
+     */
+    private static byte[] handMade(int cells, int code, byte[] firstFree, byte[] queued)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(code);
+        for (int cell = 1; cell < cells; cell++)
+            out.writeByte(0);
+        int first = code == 0 ? 0 : 1;
+        Varint.write(out, cells - first);
+        for (int cell = first; cell < cells; cell++) {
+            if (cell == first && firstFree != null)
+                out.write(firstFree);
+            else
+                Varint.write(out, cell);
+        }
+        if (queued != null)
+            out.write(queued);
+        else
+            Varint.write(out, 0);
+        out.writeLong(1);
+        out.writeLong(1);
+        return bytes.toByteArray();
+    }
+
+    /** the saved state, seed, hash and health of board */
+    private static String state(GameBoard board) throws IOException {
+        BoardHealth health = board.getHealth();
+        return savedState(board) + " seed " + board.getSeed() + " hash " + board.getHash()
+                + " free " + board.getNumFreeSlots() + " health " + health.getFreeCells() + " "
+                + health.getRegions() + " " + health.getLargestRegion() + " "
+                + health.getMovableBalls();
+    }
+}
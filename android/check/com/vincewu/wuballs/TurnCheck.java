@@ -0,0 +1,117 @@
+package com.vincewu.wuballs;
+
+/**
+ * The delta TurnResult hands a frontend against the board before and after
+ * each turn of random games: every cell whose contents differ must be
+ * dirty, and a dirty cell that doesn't differ must be one balls came to
+ * and left more than once in the turn (the end of a move that made a
+ * line, a placed ball a cascade took, a ball placed where the moved one
+ * started). The path must go from the start of the move to the end,
+ * step between cells side by side, and cross only cells that were empty.
+ * The turn listener must get each turn once, game over included.
+ */
+class TurnCheck extends Check {
+
+    private static final int NONE = -2; // an empty cell, see pieces()
+
+    private GameBoard board;
+    private int size;
+    private TurnResult heard; // the last turn the listener got
+    private int turnsHeard;
+
+    void round() throws Exception {
+        GameOptions options = randomOptions(12);
+        options.rules.ballsPerTurn = 1 + random.nextInt(6);
+        board = new GameBoard(options, random.nextLong());
+        size = board.size;
+        board.setTurnListener(new TurnListener() {
+            public void turnPlayed(GameBoard board, TurnResult turn) {
+                heard = turn;
+                turnsHeard++;
+            }
+        });
+        TurnResult turn = new TurnResult(size);
+        int[] moves = new int[board.maxMoves()];
+        try {
+            for (int n = 0; n < board.getInitialBalls(); n++)
+                board.placeNextBall();
+        } catch (GameOverException goe) {
+            return;
+        }
+        for (int step = 0; step < 200; step++) {
+            int numMoves = board.listMoves(moves);
+            if (numMoves == 0)
+                break;
+            int move = moves[random.nextInt(numMoves)];
+            int[] before = pieces();
+            boolean over = false;
+            heard = null;
+            turnsHeard = 0;
+            try {
+                check(board.playTurn(Move.start(move), Move.end(move), turn), "step " + step
+                        + ": listed move has no route");
+            } catch (GameOverException goe) {
+                over = true;
+            }
+            String when = "step " + step + (over ? ", game over" : "");
+            checkEquals(1, turnsHeard, when + ": turns heard");
+            check(heard == turn, when + ": listener got another turn");
+            compare(before, pieces(), move, turn, when);
+            if (over)
+                break;
+        }
+    }
+
+    private void compare(int[] before, int[] after, int move, TurnResult turn, String when) {
+        checkEquals(Move.start(move), turn.getStart(), when + ": start");
+        checkEquals(Move.end(move), turn.getEnd(), when + ": end");
+        checkEquals(before[Move.start(move)], turn.getMovedPiece(), when + ": moved piece");
+
+        int length = turn.getPathLength();
+        check(length >= 2, when + ": path of " + length);
+        checkEquals(turn.getStart(), turn.getPath(0), when + ": path start");
+        checkEquals(turn.getEnd(), turn.getPath(length - 1), when + ": path end");
+        for (int n = 1; n < length; n++) {
+            int from = turn.getPath(n - 1), to = turn.getPath(n);
+            int di = Math.abs(to / size - from / size), dj = Math.abs(to % size - from % size);
+            checkEquals(1, di + dj, when + ": path step " + from + "->" + to);
+            checkEquals(NONE, before[to], when + ": path through a ball at " + to);
+        }
+
+        // times a ball came to or left each cell
+        int[] touched = new int[size * size];
+        touched[turn.getStart()]++;
+        touched[turn.getEnd()]++;
+        for (int n = 0; n < turn.getNumPlaced(); n++)
+            touched[turn.getPlaced(n)]++;
+        for (int n = 0; n < turn.getNumRemoved(); n++)
+            touched[turn.getRemoved(n)]++;
+
+        int dirty = 0;
+        for (int cell = 0; cell < size * size; cell++) {
+            if (before[cell] != after[cell])
+                check(turn.isDirty(cell), when + ": " + cell + " changed but isn't dirty");
+            else if (turn.isDirty(cell))
+                check(touched[cell] >= 2, when + ": " + cell + " is dirty but didn't change");
+            checkEquals(touched[cell] > 0, turn.isDirty(cell), when + ": " + cell
+                    + " dirty, touched " + touched[cell] + " times");
+            if (turn.isDirty(cell))
+                dirty++;
+        }
+        int listed = 0;
+        for (int cell = turn.nextDirty(0); cell >= 0; cell = turn.nextDirty(cell + 1)) {
+            check(turn.isDirty(cell), when + ": nextDirty() gave clean " + cell);
+            listed++;
+        }
+        checkEquals(dirty, listed, when + ": cells nextDirty() goes through");
+    }
+
+    /** the ball on each cell of the board: type, PieceQueue.JOKER, or NONE if empty */
+    private int[] pieces() {
+        int[] pieces = new int[size * size];
+        for (int cell = 0; cell < pieces.length; cell++)
+            pieces[cell] = board.isEmpty(cell) ? NONE : board.isJoker(cell) ? PieceQueue.JOKER
+                    : board.getType(cell);
+        return pieces;
+    }
+}
@@ -0,0 +1,111 @@
+package com.vincewu.wuballs;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * GameBoard.rewind() against the states the game went through: random
+ * games with nested checkpoints, rewound to a random open one now and then.
+ * A rewind must bring back the state at the checkpoint exactly (balls, free
+ * cell order, upcoming pieces, random numbers, line index and hash), and
+ * replaying the moves after it must go through the same states again.
+ */
+class UndoCheck extends Check {
+
+    /** an open checkpoint, and what the game was like then */
+    private static class Checkpoint {
+        final int checkpoint;
+        final int played; // moves played before it
+        final String state;
+
+        Checkpoint(int checkpoint, int played, String state) {
+            this.checkpoint = checkpoint;
+            this.played = played;
+            this.state = state;
+        }
+    }
+
+    private GameBoard board;
+    private TurnResult turn;
+
+    void round() throws Exception {
+        board = new GameBoard(randomOptions(10), random.nextLong());
+        turn = new TurnResult(board.size);
+        int[] moves = new int[board.maxMoves()];
+
+        List<Integer> played = new ArrayList<Integer>();
+        List<String> after = new ArrayList<String>(); // state after each move played
+        Deque<Checkpoint> open = new ArrayDeque<Checkpoint>();
+        try {
+            for (int n = 0; n < board.getInitialBalls(); n++)
+                board.placeNextBall();
+            for (int step = 0; step < 150; step++) {
+                if (open.isEmpty() && random.nextInt(4) == 0)
+                    board.lookahead(random.nextInt(10)); // draws change what comes next
+                if (random.nextInt(3) == 0)
+                    open.push(new Checkpoint(board.checkpoint(), played.size(), state()));
+
+                int numMoves = board.listMoves(moves);
+                if (numMoves == 0)
+                    break;
+                int move = moves[random.nextInt(numMoves)];
+                Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+                played.add(move);
+                after.add(state());
+
+                if (!open.isEmpty() && random.nextInt(5) == 0) {
+                    Checkpoint checkpoint = null;
+                    for (int k = random.nextInt(open.size()); k >= 0; k--)
+                        checkpoint = open.pop();
+                    rewindAndReplay(checkpoint, played, after, step);
+                    played.subList(checkpoint.played, played.size()).clear();
+                    after.subList(checkpoint.played, after.size()).clear();
+                }
+            }
+        } catch (GameOverException goe) {
+            // the board is full: nothing left to play
+        }
+    }
+
+    /** rewind to checkpoint, play the moves since again, then rewind again */
+    private void rewindAndReplay(Checkpoint checkpoint, List<Integer> played,
+            List<String> after, int step) throws Exception {
+        String when = "step " + step + ", rewind " + (played.size() - checkpoint.played)
+                + " moves";
+        board.rewind(checkpoint.checkpoint);
+        checkEquals(checkpoint.state, state(), when);
+
+        int replay = board.checkpoint();
+        for (int m = checkpoint.played; m < played.size(); m++) {
+            int move = played.get(m);
+            try {
+                Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+            } catch (GameOverException goe) {
+                check(false, when + ": game over replaying move " + m);
+                break;
+            }
+            checkEquals(after.get(m), state(), when + ": replaying move " + m);
+        }
+        board.rewind(replay);
+        checkEquals(checkpoint.state, state(), when + ", after the replay");
+    }
+
+    /**
+     * Everything that decides how the game goes on: the state writeState()
+     * saves, and the line lengths the line index gives every cell. Also
+     * checks the hash against one computed from scratch.
+     */
+    private String state() throws IOException {
+        StringBuilder state = new StringBuilder(savedState(board));
+
+        for (int cell = 0; cell < board.size * board.size; cell++) {
+            for (int piece = PieceQueue.JOKER; piece < board.numGamePieces; piece++)
+                state.append(board.potentialLine(cell, piece));
+        }
+        checkEquals(scratchHash(board), board.getHash(), "hash");
+        return state.toString();
+    }
+}
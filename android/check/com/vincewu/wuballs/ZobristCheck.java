@@ -0,0 +1,176 @@
+package com.vincewu.wuballs;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Position hashes and the TranspositionTable. Over random games, getHash()
+ * and getHash(n) must equal the hashes worked out from the balls on board
+ * and the upcoming pieces, and the keys must all differ. The table, driven
+ * with stores from a few hashes that share buckets, must give back either a
+ * miss or exactly what was last stored for a hash, never data stored for
+ * another; also when threads store and probe at once, so torn entries must
+ * read as misses.
+ */
+class ZobristCheck extends Check {
+
+    void round() throws Exception {
+        hashes();
+        table();
+    }
+
+    /** the keys of the smallest, standard and largest boards and numbers of types */
+    void cases() throws Exception {
+        for (int size : new int[] { 5, 9, 64 }) {
+            for (int numTypes : new int[] { 1, 7, 63 }) {
+                Zobrist zobrist = Zobrist.of(size, numTypes);
+                check(zobrist == Zobrist.of(size, numTypes), size + "x" + size + ", " + numTypes
+                        + " types: keys not shared");
+                Set<Long> keys = new HashSet<Long>();
+                int cells = size * size;
+                for (int piece = 0; piece <= numTypes; piece++) {
+                    for (int cell = 0; cell < cells; cell++)
+                        keys.add(zobrist.key(piece, cell));
+                    for (int offset = 0; offset < GameBoard.MAX_LOOKAHEAD; offset++)
+                        keys.add(zobrist.upcomingKey(piece, offset));
+                }
+                keys.add(0L);
+                checkEquals((numTypes + 1) * (cells + GameBoard.MAX_LOOKAHEAD) + 1, keys.size(),
+                        size + "x" + size + ", " + numTypes + " types: distinct keys");
+            }
+        }
+        concurrentTable();
+    }
+
+    /** hashes of a random game against the hashes from scratch, turn by turn */
+    private void hashes() throws Exception {
+        GameBoard board = new GameBoard(randomOptions(10), random.nextLong());
+        TurnResult turn = new TurnResult(board.size);
+        int[] moves = new int[board.maxMoves()];
+        try {
+            for (int n = 0; n < board.getInitialBalls(); n++)
+                board.placeNextBall();
+            for (int step = 0; step < 60; step++) {
+                int looked = board.lookahead(random.nextInt(6)).size();
+                checkEquals(scratchHash(board), board.getHash(), "step " + step + ": hash");
+                for (int n = 0; n <= looked + 1; n++)
+                    checkEquals(upcomingHash(board, n), board.getHash(n), "step " + step
+                            + ": hash with " + n + " upcoming");
+                int numMoves = board.listMoves(moves);
+                if (numMoves == 0)
+                    break;
+                int move = moves[random.nextInt(numMoves)];
+                Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+            }
+        } catch (GameOverException goe) {
+            checkEquals(scratchHash(board), board.getHash(), "game over: hash");
+        }
+    }
+
+    /** getHash(num) from scratch */
+    private static long upcomingHash(GameBoard board, int num) {
+        Zobrist zobrist = Zobrist.of(board.size, board.numGamePieces);
+        long hash = scratchHash(board);
+        Lookahead upcoming = board.lookahead(0);
+        for (int n = 0; n < Math.min(num, upcoming.size()); n++) {
+            int piece = upcoming.isJoker(n) ? board.numGamePieces : upcoming.getType(n);
+            hash ^= zobrist.upcomingKey(piece, n);
+        }
+        return hash;
+    }
+
+    /** random stores and probes, against a map of what was last stored */
+    private void table() {
+        TranspositionTable table = new TranspositionTable(2 << random.nextInt(6));
+        long[] hashes = new long[4 + random.nextInt(3 * table.capacity())];
+        for (int h = 0; h < hashes.length; h++) {
+            // hashes that differ by the same bits on both halves share a bucket
+            boolean near = h > 0 && random.nextInt(4) > 0;
+            long bits = near ? hashes[random.nextInt(h)] : random.nextLong();
+            long shared = random.nextInt(1 << 12);
+            hashes[h] = bits ^ (shared << 32 | shared);
+        }
+        Map<Long, Long> stored = new HashMap<Long, Long>();
+        for (int step = 0; step < 400; step++) {
+            if (random.nextInt(40) == 0)
+                table.newSearch();
+            long hash = hashes[random.nextInt(hashes.length)];
+            float value = random.nextInt(3) == 0 ? random.nextInt(100)
+                    : random.nextFloat() * 1e6f;
+            int move = random.nextInt(8) == 0 ? Move.NONE : Move.pack(random.nextInt(4096),
+                    random.nextInt(4096));
+            int depth = random.nextInt(TranspositionTable.MAX_DEPTH + 1);
+            table.store(hash, value, move, depth);
+            long data = table.probe(hash);
+            check(data != TranspositionTable.MISS, "step " + step + ": missed what was stored");
+            checkEquals(value, TranspositionTable.value(data), "step " + step + ": value");
+            checkEquals(move, TranspositionTable.move(data), "step " + step + ": move");
+            checkEquals(depth, TranspositionTable.depth(data), "step " + step + ": depth");
+            stored.put(hash, data);
+
+            for (long other : hashes) {
+                long found = table.probe(other);
+                Long last = stored.get(other);
+                check(found == TranspositionTable.MISS || (last != null && last == found), "step "
+                        + step + ": probe " + other + " gave data not last stored for it");
+            }
+        }
+        try {
+            table.store(hashes[0], 0, Move.NONE, TranspositionTable.MAX_DEPTH + 1);
+            check(false, "depth over MAX_DEPTH stored");
+        } catch (IllegalArgumentException iaex) {
+            // as it should
+        }
+    }
+
+    /**
+     * threads storing and probing a small table at once, with the data of
+     * each hash worked out from the hash: anything a probe finds must match
+     */
+    private void concurrentTable() throws Exception {
+        final TranspositionTable table = new TranspositionTable(16);
+        final long[] hashes = new long[64];
+        Random seeds = new Random(7);
+        for (int h = 0; h < hashes.length; h++)
+            hashes[h] = seeds.nextLong();
+        final AtomicInteger wrong = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    Random picks = new Random(seed);
+                    for (int n = 0; n < 200000; n++) {
+                        long hash = hashes[picks.nextInt(hashes.length)];
+                        if (picks.nextBoolean()) {
+                            table.store(hash, (float) (hash & 0xFFFF), move(hash), depth(hash));
+                            continue;
+                        }
+                        long data = table.probe(hash);
+                        if (data != TranspositionTable.MISS
+                                && (TranspositionTable.value(data) != (float) (hash & 0xFFFF)
+                                        || TranspositionTable.move(data) != move(hash)
+                                        || TranspositionTable.depth(data) != depth(hash)))
+                            wrong.incrementAndGet();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        checkEquals(0, wrong.get(), "probes finding data stored for another hash");
+    }
+
+    private static int move(long hash) {
+        return Move.pack((int) (hash >>> 20) & 0xFFF, (int) (hash >>> 40) & 0xFFF);
+    }
+
+    private static int depth(long hash) {
+        return (int) (hash >>> 56) & TranspositionTable.MAX_DEPTH;
+    }
+}
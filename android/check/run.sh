@@ -0,0 +1,9 @@
+#!/bin/sh
+# Builds the game engine with the consistency checks, without the Android
+# classes, and runs them. Arguments go to the checks: [filter] [-seed n]
+# [-rounds n]
+cd "$(dirname "$0")/.."
+rm -rf bin/check && mkdir -p bin/check
+javac -d bin/check $(grep -L "^import android" src/com/vincewu/wuballs/*.java) \
+    check/com/vincewu/wuballs/*.java || exit 1
+java -cp bin/check com.vincewu.wuballs.Check "$@"
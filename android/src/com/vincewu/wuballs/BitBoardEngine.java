@@ -0,0 +1,81 @@
+package com.vincewu.wuballs;
+
+/**
+ * Compact board representation for headless play: occupancy is packed into
+ * long bitboards (one bit per cell), and the balls live in a flat byte array
+ * of piece codes (see Piece). No objects are created per ball, so millions of
+ * boards can be played without the GC getting in the way.
+ *
+ * Wuball objects are only created when asked for through getWuball().
+ */
+class BitBoardEngine implements BoardEngine {
+
+    private final int size;
+    private final long[] occupied; // bit set if there's a ball at the cell
+    private final byte[] pieces; // piece code of the ball at each occupied cell
+
+    public BitBoardEngine(int size) {
+        this.size = size;
+        this.occupied = new long[(size * size + 63) >>> 6];
+        this.pieces = new byte[size * size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getPiece(int cell) {
+        return isEmpty(cell) ? Piece.EMPTY : pieces[cell] & 0xFF;
+    }
+
+    public boolean isEmpty(int cell) {
+        return (occupied[cell >>> 6] & (1L << cell)) == 0;
+    }
+
+    public boolean isJoker(int cell) {
+        return !isEmpty(cell) && (pieces[cell] & Piece.JOKER) != 0;
+    }
+
+    public int getType(int cell) {
+        return Piece.color(getPiece(cell));
+    }
+
+    public boolean hasMoved(int cell) {
+        return !isEmpty(cell) && (pieces[cell] & Piece.MOVED) != 0;
+    }
+
+    public Wuball getWuball(int cell) {
+        if (isEmpty(cell))
+            return null;
+        return Wuball.fromPiece(pieces[cell] & 0xFF);
+    }
+
+    public void put(int cell, int piece) {
+        occupied[cell >>> 6] |= 1L << cell;
+        pieces[cell] = (byte) piece;
+    }
+
+    public void move(int start, int end) {
+        occupied[end >>> 6] |= 1L << end;
+        pieces[end] = (byte) (pieces[start] | Piece.MOVED);
+        clear(start);
+    }
+
+    public void clear(int cell) {
+        occupied[cell >>> 6] &= ~(1L << cell);
+    }
+
+    public void copyFrom(BoardEngine other) {
+        if (other instanceof BitBoardEngine) {
+            BitBoardEngine bits = (BitBoardEngine) other;
+            System.arraycopy(bits.occupied, 0, occupied, 0, occupied.length);
+            System.arraycopy(bits.pieces, 0, pieces, 0, pieces.length);
+            return;
+        }
+        for (int cell = 0; cell < pieces.length; cell++) {
+            clear(cell);
+            if (!other.isEmpty(cell))
+                put(cell, other.getPiece(cell));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.vincewu.wuballs;
+
+/**
+ * Storage for the game pieces sitting on a board. GameBoard runs all of the
+ * game rules (routes, connect-5, placing balls) on top of this interface, so
+ * the board representation can be swapped without touching the rules.
+ *
+ * Cells are addressed by a flat index: i * size + j
+ */
+interface BoardEngine {
+
+    /** the x in an x*x board */
+    public int size();
+
+    /** code of the ball at cell (see Piece), or Piece.EMPTY */
+    public int getPiece(int cell);
+
+    /** whether there is no ball at cell */
+    public boolean isEmpty(int cell);
+
+    /** whether the ball at cell is a Joker piece, false for empty cells */
+    public boolean isJoker(int cell);
+
+    /**
+     * type of the ball at cell, Piece.color(Piece.EMPTY) for empty cells
+     * (undefined for Jokers)
+     */
+    public int getType(int cell);
+
+    /** whether the ball at cell has been moved by the user, false for empty cells */
+    public boolean hasMoved(int cell);
+
+    /** return the ball at cell as a Wuball, or null if cell is empty */
+    public Wuball getWuball(int cell);
+
+    /**
+     * put a ball on an empty cell
+     * 
+     * @param piece
+     *            code of the ball (see Piece)
+     */
+    public void put(int cell, int piece);
+
+    /** move the ball at start to the empty cell end, and flag it as moved */
+    public void move(int start, int end);
+
+    /** remove the ball at cell, if any */
+    public void clear(int cell);
+
+    /** make this board a copy of other, which must have the same size */
+    public void copyFrom(BoardEngine other);
+}
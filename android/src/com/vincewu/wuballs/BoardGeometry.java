@@ -0,0 +1,77 @@
+package com.vincewu.wuballs;
+
+/**
+ * Cell neighbors and ray lengths for one board size, in the 8 directions of
+ * LineIndex.DI and DJ. Computed once per size and shared by every board of
+ * that size, so line scans and route searches walk flat cell indices without
+ * any bounds math.
+ *
+ * Immutable, so safe to share between threads.
+ */
+final class BoardGeometry {
+
+    /** direction indexes for the 4 orthogonal neighbors */
+    static final int DOWN = 0, RIGHT = 1, UP = 4, LEFT = 5;
+
+    private static final BoardGeometry[] geometries = new BoardGeometry[GameBoard.MAX_SIZE + 1];
+
+    public final int size;
+    public final int cells;
+
+    /** flat index change of one step in direction d */
+    private final int[] steps = new int[8];
+
+    /**
+     * [cell * 8 + d]: the cell next to cell in direction d, or cell itself
+     * at the edge of the board. A cell never counts as its own neighbor
+     * (it's occupied, or already visited), so searches need no edge tests.
+     */
+    private final int[] neighbors;
+
+    /** [cell * 8 + d]: number of cells from cell to the edge in direction d */
+    private final byte[] rays;
+
+    /** the geometry of an x*x board, size GameBoard.MIN_SIZE to MAX_SIZE */
+    static synchronized BoardGeometry of(int size) {
+        if (geometries[size] == null)
+            geometries[size] = new BoardGeometry(size);
+        return geometries[size];
+    }
+
+    private BoardGeometry(int size) {
+        this.size = size;
+        this.cells = size * size;
+        this.neighbors = new int[cells * 8];
+        this.rays = new byte[cells * 8];
+        for (int d = 0; d < 8; d++)
+            steps[d] = LineIndex.DI[d] * size + LineIndex.DJ[d];
+        for (int cell = 0; cell < cells; cell++) {
+            int i = cell / size, j = cell % size;
+            for (int d = 0; d < 8; d++) {
+                int ray = Math.min(edge(i, LineIndex.DI[d]), edge(j, LineIndex.DJ[d]));
+                rays[cell * 8 + d] = (byte) ray;
+                neighbors[cell * 8 + d] = ray > 0 ? cell + steps[d] : cell;
+            }
+        }
+    }
+
+    /** steps from coordinate x to the edge, going by delta (unbounded if delta is 0) */
+    private int edge(int x, int delta) {
+        return delta > 0 ? size - 1 - x : delta < 0 ? x : size;
+    }
+
+    /** flat index change of one step in direction d */
+    public int step(int d) {
+        return steps[d];
+    }
+
+    /** the cell next to cell in direction d, or cell itself at the edge */
+    public int neighbor(int cell, int d) {
+        return neighbors[cell * 8 + d];
+    }
+
+    /** number of cells from cell to the edge of the board in direction d */
+    public int ray(int cell, int d) {
+        return rays[cell * 8 + d];
+    }
+}
@@ -0,0 +1,39 @@
+package com.vincewu.wuballs;
+
+/**
+ * Read-only view of how much room a game has left: the empty cells, the
+ * connected regions they form, and how far the balls can move. Kept up to
+ * date as the board changes, so every reading is a lookup.
+ *
+ * Cells are flat indexes, i * size + j.
+ */
+interface BoardHealth {
+
+    /** number of empty cells */
+    public int getFreeCells();
+
+    /** number of connected regions of empty cells */
+    public int getRegions();
+
+    /** number of cells in the largest empty region, 0 on a full board */
+    public int getLargestRegion();
+
+    /** number of cells in the empty region of cell, 0 if cell holds a ball */
+    public int regionSize(int cell);
+
+    /**
+     * number of cells the ball at cell can move to: the sizes of the empty
+     * regions next to it added up. 0 for empty cells.
+     */
+    public int mobility(int cell);
+
+    /** number of balls that can move at all: the ones with an empty neighbor */
+    public int getMovableBalls();
+
+    /**
+     * How close the game is to filling up: the share of cells outside the
+     * largest empty region. 0 on an empty board, 1 on a full one, and it
+     * rises as the free space shrinks or breaks up.
+     */
+    public double danger();
+}
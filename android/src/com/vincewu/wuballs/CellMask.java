@@ -0,0 +1,65 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for sets of board cells packed into a long[] bitmask, one bit per
+ * flat cell index.
+ */
+final class CellMask {
+
+    private CellMask() {
+    }
+
+    /** number of longs needed to hold a mask for numCells cells */
+    public static int words(int numCells) {
+        return (numCells + 63) >>> 6;
+    }
+
+    /** create an empty mask for numCells cells */
+    public static long[] create(int numCells) {
+        return new long[words(numCells)];
+    }
+
+    public static boolean contains(long[] mask, int cell) {
+        return (mask[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public static void add(long[] mask, int cell) {
+        mask[cell >>> 6] |= 1L << cell;
+    }
+
+    public static void remove(long[] mask, int cell) {
+        mask[cell >>> 6] &= ~(1L << cell);
+    }
+
+    public static void clear(long[] mask) {
+        Arrays.fill(mask, 0L);
+    }
+
+    /** number of cells in mask */
+    public static int count(long[] mask) {
+        int count = 0;
+        for (int w = 0; w < mask.length; w++)
+            count += Long.bitCount(mask[w]);
+        return count;
+    }
+
+    /**
+     * @return the first cell in mask at or after cell, or -1 if there is none.
+     *         Loop over a mask with:
+     *         for (int c = next(mask, 0); c >= 0; c = next(mask, c + 1))
+     */
+    public static int next(long[] mask, int cell) {
+        int w = cell >>> 6;
+        if (w >= mask.length)
+            return -1;
+        long bits = mask[w] & (-1L << cell);
+        while (bits == 0) {
+            if (++w >= mask.length)
+                return -1;
+            bits = mask[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(bits);
+    }
+}
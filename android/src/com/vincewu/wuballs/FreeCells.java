@@ -0,0 +1,103 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+
+/**
+ * The set of empty cells on a board, kept dense so a random empty cell can be
+ * picked in constant time: cells holds the empty cells in slots 0 to
+ * count - 1, and position maps each cell to its slot (-1 if it holds a ball).
+ * Removing a cell moves the last slot into its place.
+ *
+ * The order of the slots only depends on the order of the changes, so
+ * placements are the same every time a game is played with the same seed.
+ */
+class FreeCells {
+
+    private final int[] cells;
+    private final int[] position;
+    private int count;
+
+    /** all cells start out empty */
+    public FreeCells(int numCells) {
+        cells = new int[numCells];
+        position = new int[numCells];
+        reset();
+    }
+
+    /** all cells empty, in the order of a new set */
+    public void reset() {
+        for (int cell = 0; cell < cells.length; cell++) {
+            cells[cell] = cell;
+            position[cell] = cell;
+        }
+        count = cells.length;
+    }
+
+    /** make this set a copy of other, which must be for the same number of cells */
+    public void copyFrom(FreeCells other) {
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        System.arraycopy(other.position, 0, position, 0, position.length);
+        count = other.count;
+    }
+
+    /** no empty cells: add them back in the order wanted */
+    public void clear() {
+        Arrays.fill(position, -1);
+        count = 0;
+    }
+
+    /** number of empty cells */
+    public int size() {
+        return count;
+    }
+
+    public boolean contains(int cell) {
+        return position[cell] >= 0;
+    }
+
+    /** the n-th empty cell, 0 <= n < size() */
+    public int get(int n) {
+        return cells[n];
+    }
+
+    /** cell became empty */
+    public void add(int cell) {
+        if (position[cell] >= 0)
+            return;
+        position[cell] = count;
+        cells[count++] = cell;
+    }
+
+    /**
+     * cell was filled
+     * 
+     * @return the slot cell was in, for restore(), or -1 if it wasn't empty
+     */
+    public int remove(int cell) {
+        int slot = position[cell];
+        if (slot < 0)
+            return -1;
+        int last = cells[--count];
+        cells[slot] = last;
+        position[last] = slot;
+        position[cell] = -1;
+        return slot;
+    }
+
+    /**
+     * Undo remove(cell), which returned slot: put cell back in its slot and
+     * the cell that took its place back at the end. Undoing changes in
+     * reverse order restores the exact slot order, so the same placements
+     * follow.
+     */
+    public void restore(int cell, int slot) {
+        if (slot < count) {
+            int moved = cells[slot];
+            cells[count] = moved;
+            position[moved] = count;
+        }
+        cells[slot] = cell;
+        position[cell] = slot;
+        count++;
+    }
+}
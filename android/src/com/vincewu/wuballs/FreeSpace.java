@@ -0,0 +1,380 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+
+/**
+ * Incrementally maintained regions of empty cells (see BoardHealth). Every
+ * empty cell carries the id of its region, so lookups never chase parent
+ * pointers.
+ *
+ * When a cell is freed, the regions around it merge: the smaller ones are
+ * relabeled into the largest, so a cell is relabeled O(log cells) times
+ * over any sequence of merges. When a cell is filled, its region may split.
+ * Searches start from each empty neighbor at once, taking turns, and stop
+ * as soon as all of them have met, or all but one have run out of cells.
+ * Only the parts that ran out get new ids, so a split costs about as much
+ * as the smaller parts, not the whole region.
+ *
+ * Not thread safe: use one FreeSpace per board.
+ */
+class FreeSpace implements BoardHealth {
+
+    private static final int BALL = -1; // region of a cell holding a ball
+    private static final int UNLABELED = -2; // rebuild(): empty, region not known yet
+    private static final int[] ORTHOGONAL = { BoardGeometry.UP, BoardGeometry.RIGHT,
+            BoardGeometry.DOWN, BoardGeometry.LEFT };
+
+    private final BoardGeometry geometry;
+    private final int[] region; // region id of each empty cell, BALL for balls
+    private final int[] emptyNeighbors; // empty cells next to each cell
+    private final int[] regionSize; // cells in each region id, 0 if the id is unused
+    private final int[] freeIds; // stack of unused region ids
+    private int numFreeIds;
+    private final int[] sizeCount; // number of regions of each size
+    private int freeCells, regions, largest, movableBalls;
+
+    // split searches: up to 4 at a time, one from each empty neighbor
+    private final int[][] queues = new int[4][];
+    private final int[] heads = new int[4], tails = new int[4];
+    private final int[] group = new int[4]; // searches that met share a group
+    private final int[] seen; // stamp * 4 + search that reached each cell
+    private int stamp;
+
+    public FreeSpace(int size) {
+        this.geometry = BoardGeometry.of(size);
+        int cells = geometry.cells;
+        this.region = new int[cells];
+        this.emptyNeighbors = new int[cells];
+        this.regionSize = new int[cells];
+        this.freeIds = new int[cells];
+        this.sizeCount = new int[cells + 1];
+        this.seen = new int[cells];
+        for (int s = 0; s < 4; s++)
+            queues[s] = new int[cells];
+        clear();
+    }
+
+    /** back to an empty board: one region of every cell */
+    public void clear() {
+        int cells = geometry.cells;
+        Arrays.fill(region, 0);
+        Arrays.fill(regionSize, 0);
+        Arrays.fill(sizeCount, 0);
+        for (int cell = 0; cell < cells; cell++) {
+            int count = 0;
+            for (int d : ORTHOGONAL) {
+                if (geometry.neighbor(cell, d) != cell)
+                    count++;
+            }
+            emptyNeighbors[cell] = count;
+        }
+        numFreeIds = 0;
+        for (int id = cells - 1; id > 0; id--)
+            freeIds[numFreeIds++] = id;
+        regionSize[0] = cells;
+        sizeCount[cells] = 1;
+        freeCells = cells;
+        regions = 1;
+        largest = cells;
+        movableBalls = 0;
+    }
+
+    /**
+     * Label every region of board from scratch, in one pass: cheaper than
+     * update() cell by cell when a whole position is put on the board at
+     * once.
+     */
+    public void rebuild(BoardEngine board) {
+        int cells = geometry.cells;
+        Arrays.fill(regionSize, 0);
+        Arrays.fill(sizeCount, 0);
+        freeCells = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (board.isEmpty(cell)) {
+                region[cell] = UNLABELED;
+                freeCells++;
+            } else {
+                region[cell] = BALL;
+            }
+        }
+        regions = 0;
+        largest = 0;
+        int[] queue = queues[0];
+        for (int cell = 0; cell < cells; cell++) {
+            if (region[cell] != UNLABELED)
+                continue;
+            int id = regions++;
+            int head = 0, tail = 0;
+            region[cell] = id;
+            queue[tail++] = cell;
+            while (head < tail) {
+                int c = queue[head++];
+                for (int d : ORTHOGONAL) {
+                    int n = geometry.neighbor(c, d);
+                    if (region[n] == UNLABELED) {
+                        region[n] = id;
+                        queue[tail++] = n;
+                    }
+                }
+            }
+            regionSize[id] = tail;
+            sizeCount[tail]++;
+            largest = Math.max(largest, tail);
+        }
+        numFreeIds = 0;
+        for (int id = cells - 1; id >= regions; id--)
+            freeIds[numFreeIds++] = id;
+
+        movableBalls = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            int count = 0;
+            for (int d : ORTHOGONAL) {
+                int n = geometry.neighbor(cell, d);
+                if (n != cell && region[n] != BALL)
+                    count++;
+            }
+            emptyNeighbors[cell] = count;
+            if (region[cell] == BALL && count > 0)
+                movableBalls++;
+        }
+    }
+
+    /** make this a copy of other, which must be for the same size */
+    public void copyFrom(FreeSpace other) {
+        System.arraycopy(other.region, 0, region, 0, region.length);
+        System.arraycopy(other.emptyNeighbors, 0, emptyNeighbors, 0, emptyNeighbors.length);
+        System.arraycopy(other.regionSize, 0, regionSize, 0, regionSize.length);
+        System.arraycopy(other.freeIds, 0, freeIds, 0, freeIds.length);
+        System.arraycopy(other.sizeCount, 0, sizeCount, 0, sizeCount.length);
+        numFreeIds = other.numFreeIds;
+        freeCells = other.freeCells;
+        regions = other.regions;
+        largest = other.largest;
+        movableBalls = other.movableBalls;
+    }
+
+    /**
+     * Bring the regions up to date after cell changed on board (a ball was
+     * placed, moved or removed). Only this object's own record of the other
+     * cells is used, so the two cells of a move can be updated in any order.
+     */
+    public void update(BoardEngine board, int cell) {
+        boolean empty = board.isEmpty(cell);
+        if (empty == (region[cell] != BALL))
+            return;
+        if (empty)
+            free(cell);
+        else
+            fill(cell);
+    }
+
+    public int getFreeCells() {
+        return freeCells;
+    }
+
+    public int getRegions() {
+        return regions;
+    }
+
+    public int getLargestRegion() {
+        return largest;
+    }
+
+    public int regionSize(int cell) {
+        return region[cell] == BALL ? 0 : regionSize[region[cell]];
+    }
+
+    public int mobility(int cell) {
+        if (region[cell] != BALL)
+            return 0;
+        int total = 0;
+        for (int x = 0; x < 4; x++) {
+            int id = region[geometry.neighbor(cell, ORTHOGONAL[x])];
+            if (id == BALL)
+                continue;
+            boolean counted = false;
+            for (int y = 0; y < x; y++)
+                counted |= region[geometry.neighbor(cell, ORTHOGONAL[y])] == id;
+            if (!counted)
+                total += regionSize[id];
+        }
+        return total;
+    }
+
+    public int getMovableBalls() {
+        return movableBalls;
+    }
+
+    public double danger() {
+        return 1 - (double) largest / geometry.cells;
+    }
+
+    /** a ball was removed from cell: join the regions around it */
+    private void free(int cell) {
+        setNeighborsEmpty(cell, 1);
+        if (emptyNeighbors[cell] > 0)
+            movableBalls--; // it was a ball that could move
+        freeCells++;
+
+        // the largest region next to cell takes in the others
+        int into = BALL;
+        for (int d : ORTHOGONAL) {
+            int id = region[geometry.neighbor(cell, d)];
+            if (id != BALL && (into == BALL || regionSize[id] > regionSize[into]))
+                into = id;
+        }
+        if (into == BALL) {
+            into = freeIds[--numFreeIds];
+            regions++;
+        }
+        int size = regionSize[into] + 1;
+        region[cell] = into;
+        for (int d : ORTHOGONAL) {
+            int id = region[geometry.neighbor(cell, d)];
+            if (id != into && id != BALL) {
+                size += regionSize[id];
+                relabel(geometry.neighbor(cell, d), id, into);
+                resize(id, 0);
+            }
+        }
+        resize(into, size);
+    }
+
+    /** a ball was put on cell: its region shrinks, and may fall apart */
+    private void fill(int cell) {
+        int id = region[cell];
+        region[cell] = BALL;
+        freeCells--;
+        setNeighborsEmpty(cell, -1);
+        if (emptyNeighbors[cell] > 0)
+            movableBalls++;
+
+        // start a search from each empty neighbor
+        int searches = 0;
+        if (++stamp == Integer.MAX_VALUE / 4) { // wrapped around: stale stamps could collide
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        for (int d : ORTHOGONAL) {
+            int n = geometry.neighbor(cell, d);
+            if (n == cell || region[n] == BALL)
+                continue;
+            queues[searches][0] = n;
+            heads[searches] = 0;
+            tails[searches] = 1;
+            group[searches] = searches;
+            seen[n] = stamp * 4 + searches;
+            searches++;
+        }
+        if (searches <= 1) {
+            resize(id, regionSize[id] - 1);
+            return;
+        }
+
+        // take turns expanding one cell per search, until all searches have
+        // met, or all but one group has run out: those are regions of their own
+        int open = searches; // groups that haven't met or run out
+        int size = regionSize[id] - 1;
+        while (open > 1) {
+            for (int s = 0; s < searches && open > 1; s++) {
+                if (heads[s] == tails[s])
+                    continue;
+                int c = queues[s][heads[s]++];
+                for (int d : ORTHOGONAL) {
+                    int n = geometry.neighbor(c, d);
+                    if (region[n] == BALL || n == c)
+                        continue;
+                    if (seen[n] / 4 != stamp) {
+                        seen[n] = stamp * 4 + s;
+                        queues[s][tails[s]++] = n;
+                    } else if (find(seen[n] % 4) != find(s)) {
+                        group[find(seen[n] % 4)] = find(s);
+                        open--;
+                    }
+                }
+                if (open > 1 && heads[s] == tails[s] && exhausted(find(s), searches)) {
+                    // this group has no way to the others: give it a region of its own
+                    int newId = freeIds[--numFreeIds];
+                    int moved = 0;
+                    for (int t = 0; t < searches; t++) {
+                        if (find(t) != find(s))
+                            continue;
+                        for (int q = 0; q < tails[t]; q++)
+                            region[queues[t][q]] = newId;
+                        moved += tails[t];
+                    }
+                    regions++;
+                    resize(newId, moved);
+                    size -= moved;
+                    open--;
+                }
+            }
+        }
+        resize(id, size);
+    }
+
+    /** whether every search in the group led by root has run out of cells */
+    private boolean exhausted(int root, int searches) {
+        for (int t = 0; t < searches; t++) {
+            if (find(t) == root && heads[t] < tails[t])
+                return false;
+        }
+        return true;
+    }
+
+    /** group leader of search s */
+    private int find(int s) {
+        while (group[s] != s)
+            s = group[s];
+        return s;
+    }
+
+    /** relabel the region from, which start belongs to, as region to */
+    private void relabel(int start, int from, int to) {
+        int[] queue = queues[0];
+        int head = 0, tail = 0;
+        region[start] = to;
+        queue[tail++] = start;
+        while (head < tail) {
+            int c = queue[head++];
+            for (int d : ORTHOGONAL) {
+                int n = geometry.neighbor(c, d);
+                if (region[n] == from) {
+                    region[n] = to;
+                    queue[tail++] = n;
+                }
+            }
+        }
+    }
+
+    /** cell became empty (delta 1) or full (-1): update its neighbors' counts */
+    private void setNeighborsEmpty(int cell, int delta) {
+        for (int d : ORTHOGONAL) {
+            int n = geometry.neighbor(cell, d);
+            if (n == cell)
+                continue;
+            int before = emptyNeighbors[n];
+            emptyNeighbors[n] = before + delta;
+            if (region[n] == BALL && (before == 0) != (before + delta == 0))
+                movableBalls += delta;
+        }
+    }
+
+    /** set the size of region id, releasing the id if size is 0 */
+    private void resize(int id, int size) {
+        int old = regionSize[id];
+        if (old > 0)
+            sizeCount[old]--;
+        regionSize[id] = size;
+        if (size > 0) {
+            sizeCount[size]++;
+        } else if (old > 0) {
+            freeIds[numFreeIds++] = id;
+            regions--;
+        }
+        if (size > largest)
+            largest = size;
+        while (largest > 0 && sizeCount[largest] == 0)
+            largest--;
+    }
+}
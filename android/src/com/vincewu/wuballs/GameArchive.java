@@ -0,0 +1,175 @@
+package com.vincewu.wuballs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only access to an archive of recorded games (see GameRecord),
+ * written by GameArchiveWriter. The archive is two files: the records one
+ * after the other, and an index holding the end offset of each record as a
+ * long, so game id n is found in constant time.
+ *
+ * Both files are memory mapped in windows, so they can be far larger than
+ * memory, and records are decoded straight from the mapping without
+ * copying them. Games are played back into a GameBoard the caller provides,
+ * so scanning millions of games creates next to no garbage.
+ *
+ * Not thread safe: open one GameArchive per thread.
+ */
+class GameArchive {
+
+    private static final int WINDOW = 1 << 28; // bytes mapped at a time
+    private static final int OVERLAP = 1 << 20; // so records that cross a window edge can be read
+
+    private final int window; // WINDOW, unless smaller for checks
+    private final int overlap;
+    private final RandomAccessFile dataFile;
+    private final RandomAccessFile indexFile;
+    private final long games;
+    private final long dataLength;
+    private final MappedByteBuffer[] dataWindows;
+    private final MappedByteBuffer[] indexWindows;
+    private final MappedInputStream input = new MappedInputStream();
+    private final GameRecordReader reader = new GameRecordReader(input);
+    private TurnResult turn; // scratch for play()
+
+    /** the index file that goes with dataFile */
+    static File indexFile(File dataFile) {
+        return new File(dataFile.getPath() + ".index");
+    }
+
+    public GameArchive(File dataFile) throws IOException {
+        this(dataFile, WINDOW, OVERLAP);
+    }
+
+    /**
+     * An archive mapped in windows of window bytes (a multiple of 8), each
+     * mapping overlap bytes more. Smaller than the default, to check records
+     * across window edges on small archives.
+     */
+    GameArchive(File dataFile, int window, int overlap) throws IOException {
+        this.window = window;
+        this.overlap = overlap;
+        this.dataFile = new RandomAccessFile(dataFile, "r");
+        this.indexFile = new RandomAccessFile(indexFile(dataFile), "r");
+        this.games = indexFile.length() / 8;
+        this.indexWindows = new MappedByteBuffer[(int) ((games * 8 + window - 1) / window)];
+        this.dataLength = games == 0 ? 0 : readIndex(games - 1);
+        if (dataLength > this.dataFile.length())
+            throw new IOException("archive data is shorter than its index: " + dataFile);
+        this.dataWindows = new MappedByteBuffer[(int) ((dataLength + window - 1) / window)];
+    }
+
+    /** number of games in the archive */
+    public long size() {
+        return games;
+    }
+
+    /**
+     * Reader positioned at game id: call begin() to read its header, then
+     * next() for its moves. Valid until the next call to reader() or play().
+     */
+    public GameRecordReader reader(long id) throws IOException {
+        if (id < 0 || id >= games)
+            throw new IndexOutOfBoundsException("game " + id + " of " + games);
+        long start = id == 0 ? 0 : readIndex(id - 1);
+        long end = readIndex(id);
+        if (end < start || end > dataLength)
+            throw new IOException("corrupt archive index at game " + id);
+        int w = (int) (start / window);
+        long windowStart = (long) w * window;
+        if (end - windowStart <= window + overlap) {
+            input.reset(window(dataWindows, dataFile, w, dataLength),
+                    (int) (start - windowStart), (int) (end - windowStart));
+        } else {
+            // a record longer than the overlap: map it on its own
+            input.reset(map(dataFile, start, end - start), 0, (int) (end - start));
+        }
+        return reader;
+    }
+
+    /**
+     * Play game id from start to end on board, and return the final score.
+     * The board must have the options of the game, e.g. from a board
+     * created with the options of reader(id) after begin(): archives of
+     * games played with the same options replay into one board, without
+     * creating garbage.
+     */
+    public int play(long id, GameBoard board) throws IOException {
+        GameRecordReader reader = reader(id);
+        if (!reader.begin())
+            throw new IOException("empty record for game " + id);
+        if (turn == null || turn.size != board.size)
+            turn = new TurnResult(board.size);
+        return GameReplay.play(reader, board, turn);
+    }
+
+    public void close() throws IOException {
+        try {
+            dataFile.close();
+        } finally {
+            indexFile.close();
+        }
+    }
+
+    /** end offset of game id */
+    private long readIndex(long id) throws IOException {
+        long offset = id * 8;
+        int w = (int) (offset / window);
+        return window(indexWindows, indexFile, w, games * 8).getLong(
+                (int) (offset - (long) w * window));
+    }
+
+    /** window w of file, mapped on first use */
+    private MappedByteBuffer window(MappedByteBuffer[] windows, RandomAccessFile file, int w,
+            long length) throws IOException {
+        if (windows[w] == null) {
+            long start = (long) w * window;
+            windows[w] = map(file, start, Math.min(window + overlap, length - start));
+        }
+        return windows[w];
+    }
+
+    private static MappedByteBuffer map(RandomAccessFile file, long start, long length)
+            throws IOException {
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("record too long to map: " + length);
+        return file.getChannel().map(FileChannel.MapMode.READ_ONLY, start, length);
+    }
+
+    /** reads part of a mapped window, without copying it or creating buffers */
+    private static class MappedInputStream extends InputStream {
+        private MappedByteBuffer buffer;
+        private int position;
+        private int limit;
+
+        void reset(MappedByteBuffer buffer, int position, int limit) {
+            this.buffer = buffer;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        public int read() {
+            return position < limit ? buffer.get(position++) & 0xFF : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (position >= limit)
+                return -1;
+            int n = Math.min(len, limit - position);
+            for (int x = 0; x < n; x++)
+                b[off + x] = buffer.get(position++);
+            return n;
+        }
+
+        public int available() {
+            return limit - position;
+        }
+    }
+}
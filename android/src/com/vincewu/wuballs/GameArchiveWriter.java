@@ -0,0 +1,120 @@
+package com.vincewu.wuballs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Appends games to a GameArchive. Record each game as with any
+ * GameRecordWriter; end() gives it the next game id.
+ *
+ * Games only enter the index once their record is safely in the data file
+ * (on flush() or close(), and every few thousand games), so a crash loses
+ * at most the games since the last flush, and opening the archive again
+ * drops whatever was cut short.
+ * Not thread safe: one writer per archive at a time.
+ */
+class GameArchiveWriter extends GameRecordWriter {
+
+    private final CountingOutputStream data;
+    private final DataOutputStream index;
+    private final long[] pending = new long[4096]; // end offsets of games not yet in the index
+    private int numPending;
+    private long games;
+
+    /** open the archive at dataFile for appending, creating it if needed */
+    public static GameArchiveWriter open(File dataFile) throws IOException {
+        File indexFile = GameArchive.indexFile(dataFile);
+        long games = 0, end = 0;
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+        try {
+            // drop a torn index entry, and data past the last indexed game
+            games = raf.length() / 8;
+            raf.setLength(games * 8);
+            if (games > 0) {
+                raf.seek((games - 1) * 8);
+                end = raf.readLong();
+            }
+        } finally {
+            raf.close();
+        }
+        raf = new RandomAccessFile(dataFile, "rw");
+        try {
+            if (raf.length() < end)
+                throw new IOException("archive data is shorter than its index: " + dataFile);
+            raf.setLength(end);
+        } finally {
+            raf.close();
+        }
+        CountingOutputStream data = new CountingOutputStream(new BufferedOutputStream(
+                new FileOutputStream(dataFile, true), 1 << 16), end);
+        DataOutputStream index = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexFile, true), 1 << 12));
+        return new GameArchiveWriter(data, index, games);
+    }
+
+    private GameArchiveWriter(CountingOutputStream data, DataOutputStream index, long games) {
+        super(data);
+        this.data = data;
+        this.index = index;
+        this.games = games;
+    }
+
+    /** end the game, and give it the next id */
+    public void end() throws IOException {
+        super.end();
+        if (numPending == pending.length)
+            flush();
+        pending[numPending++] = data.count;
+        games++;
+    }
+
+    /** number of games in the archive, including those not flushed yet */
+    public long getGames() {
+        return games;
+    }
+
+    /** write the data, then index the games written */
+    public void flush() throws IOException {
+        super.flush();
+        data.flush();
+        for (int n = 0; n < numPending; n++)
+            index.writeLong(pending[n]);
+        index.flush();
+        numPending = 0;
+    }
+
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            data.close();
+            index.close();
+        }
+    }
+
+    /** keeps track of the offset in the data file */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out, long count) {
+            super(out);
+            this.count = count;
+        }
+
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
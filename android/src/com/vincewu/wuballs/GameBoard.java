@@ -1,43 +1,494 @@
 package com.vincewu.wuballs;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
 
+/**
+ * A game of Wuballs. Each GameBoard has its own options, seed and random
+ * number generator, and boards share no state, so any number of games can be
+ * played side by side. A single GameBoard is not thread safe: drive each one
+ * from one thread at a time.
+ */
 class GameBoard {
 
-    /* TODO: make these game options configurable and private */
-    public final int size = 9; // the x in an x*x board
-    public final int numGamePieces = 7; // number of game piece types, not including joker piece
-    public final boolean playJoker = true; // whether to play joker piece
-    public final float jokerFrequency = 0.2f; // how often the joker ball plays
+    /* Game options, see GameOptions */
+    public final int size; // the x in an x*x board
+    public final int numGamePieces; // number of game piece types, not including joker piece
+    public final boolean playJoker; // whether to play joker piece
+    public final float jokerFrequency; // how often the joker ball plays
+
+    /** smallest board that has room for a connect-5 */
+    public static final int MIN_SIZE = 5;
+    /** largest board: cells must fit in 12 bits (see TranspositionTable) */
+    public static final int MAX_SIZE = 64;
+
+    /** most pieces that can be looked ahead, see lookahead() */
+    public static final int MAX_LOOKAHEAD = 256;
+
+    /** Available representations of the game board */
+    public enum EngineType {
+        OBJECTS, // one Wuball object per cell
+        BITBOARD // occupancy bitboards and piece codes, no objects per cell
+    }
+
+    /** Available random number generators */
+    public enum RandomType {
+        LEGACY, // one java.util.Random sequence for pieces and placements, as always
+        SPLITMIX // separate SplitMix64 streams for pieces and for placements
+    }
 
     /* Internal game state */
-    private Wuball[][] board; // internal representation of the game board
-    private int numFreeSlots; // internal accounting tool
-    private LinkedList<Wuball> peekList; // holding area for pre-computed Wuballs
-    private Random randomGenerator; 
+    private EngineType engineType;
+    private final RandomType randomType;
+    private final GameRules rules; // what makes a line, how it scores, balls per turn
+    private long seed; // seeds the random number generators on every restart
+    private BoardEngine board; // internal representation of the game board
+    private final BoardGeometry geometry; // neighbors and steps, shared by boards of this size
+    private final PathFinder pathFinder; // route search, reused for every move
+    private final MoveGenerator moveGenerator; // lists and rates all legal moves, for bots
+    private final int[] routeBuffer; // scratch route for moveBall(BoardCell, BoardCell)
+    private final LineIndex lineIndex; // run lengths for connect-5 detection
+    private final int[] lineBuffer = new int[24]; // scratch lines for connectFive
+    private final long[] lineMask; // scratch, balls to remove in a cascade
+    private int[] stateBuffer; // scratch for readState(): cells, free cells, then queue
+    private final FreeCells freeCells; // empty cells, for picking where to place new balls
+    private final FreeSpace freeSpace; // regions of empty cells, see getHealth()
+    private final PieceQueue pieceQueue; // holding area for pre-computed pieces
+    private final GameRandom pieceRandom; // draws the upcoming pieces
+    private final GameRandom placementRandom; // draws where new balls go; pieceRandom for LEGACY
+    private final UndoLog undoLog; // changes since the oldest open checkpoint
+    private final Zobrist zobrist; // keys for hashing positions
+    private long hash; // Zobrist hash of the balls on the board
+    private TurnListener turnListener; // gets every turn played, may be null
+
+    /* Undo log entries: the arguments are pushed first, the opcode last */
+    private static final int UNDO_CHECKPOINT = 0; // random states, high and low ints
+    private static final int UNDO_PUT = 1; // cell, its slot in freeCells
+    private static final int UNDO_MOVE = 2; // start, end, slot of end, piece code before the move
+    private static final int UNDO_REMOVE = 3; // cell, piece code
+    private static final int UNDO_DRAW = 4; // piece added to the queue
+    private static final int UNDO_POLL = 5; // piece taken from the queue
 
-    // Singleton pattern: only 1 game at a time
-    private final static GameBoard instance = new GameBoard();
+    private static final int FREE_CELL = -1; // readState(): empty, and listed as a free cell
+
+    // The app plays 1 game at a time, on this board
+    private final static GameBoard instance = new GameBoard(new GameOptions(), 123);
     public static GameBoard getInstance() {return instance;}
-    private GameBoard() {restart();}
 
     /**
-     * Clear all state 
+     * Create a new, independent game
+     * @param options game options, copied by the board
+     * @param seed seed for the random number generator
+     */
+    public GameBoard(GameOptions options, long seed) {
+        if (options.size < MIN_SIZE || options.size > MAX_SIZE)
+            throw new IllegalArgumentException("size: " + options.size);
+        if (options.numGamePieces < 1 || options.numGamePieces > Piece.MAX_COLORS)
+            throw new IllegalArgumentException("numGamePieces: " + options.numGamePieces);
+        options.rules.check(options.size);
+        this.size = options.size;
+        this.numGamePieces = options.numGamePieces;
+        this.playJoker = options.playJoker;
+        this.jokerFrequency = options.jokerFrequency;
+        this.engineType = options.engineType;
+        this.randomType = options.randomType;
+        this.rules = options.rules.copy();
+        this.seed = seed;
+        this.zobrist = Zobrist.of(size, numGamePieces);
+        this.geometry = BoardGeometry.of(size);
+        this.pathFinder = new PathFinder(size);
+        this.moveGenerator = new MoveGenerator(size);
+        this.routeBuffer = new int[size * size];
+        this.lineMask = CellMask.create(size * size);
+        this.lineIndex = new LineIndex(size, numGamePieces, rules);
+        this.freeCells = new FreeCells(size * size);
+        this.freeSpace = new FreeSpace(size);
+        this.pieceQueue = new PieceQueue(MAX_LOOKAHEAD);
+        if (randomType == RandomType.SPLITMIX) {
+            this.pieceRandom = new SplitMixRandom(seed);
+            this.placementRandom = new SplitMixRandom(seed);
+        } else {
+            this.pieceRandom = new LegacyRandom(seed);
+            this.placementRandom = pieceRandom;
+        }
+        this.undoLog = new UndoLog();
+        restart();
+    }
+
+    /**
+     * Select the board representation. Takes effect on the next restart().
+     */
+    public void setEngineType(EngineType engineType) {
+        this.engineType = engineType;
+    }
+
+    public EngineType getEngineType() {
+        return engineType;
+    }
+
+    public RandomType getRandomType() {
+        return randomType;
+    }
+
+    /** the rules of this game; a copy, changing it doesn't change the game */
+    public GameRules getRules() {
+        return rules.copy();
+    }
+
+    /** whether this game is played by rules; unlike getRules(), makes no copy */
+    boolean hasRules(GameRules rules) {
+        return this.rules.equals(rules);
+    }
+
+    /** points for lines that removed balls besides the one that made them, see connectFive() */
+    public int points(int balls) {
+        return rules.points(balls);
+    }
+
+    /** balls on the board when a game starts */
+    public int getInitialBalls() {
+        return rules.initialBalls;
+    }
+
+    /** balls placed after a move that doesn't make a line */
+    public int getBallsPerTurn() {
+        return rules.ballsPerTurn;
+    }
+
+    /** whether placed balls that make a line are removed, and score */
+    public boolean cascades() {
+        return rules.cascade;
+    }
+
+    /**
+     * Clear all state and start a new game with a different seed
+     */
+    public void restart(long seed) {
+        this.seed = seed;
+        restart();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /** set the seed getSeed() returns, without changing the game: for restoring saved games */
+    void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Clear all state. Reuses the board's storage, so restarting creates no
+     * garbage unless the engine type changed.
      */
     public void restart() {
-        board = new Wuball[9][9];
-        this.numFreeSlots = size * size;
-        peekList = new LinkedList<Wuball>();
-        randomGenerator = new Random(123); // TODO: remove fixed seed
+        emptyBoard();
+        pieceQueue.clear();
+        undoLog.clear();
+        reseed(seed);
+    }
+
+    /** no balls on the board, and all cells free in their starting order */
+    private void emptyBoard() {
+        boolean bitboard = engineType == EngineType.BITBOARD;
+        if (board == null || (board instanceof BitBoardEngine) != bitboard) {
+            board = bitboard ? new BitBoardEngine(size) : new ObjectBoardEngine(size);
+        } else {
+            for (int cell = 0; cell < size * size; cell++)
+                board.clear(cell);
+        }
+        lineIndex.clear();
+        freeCells.reset();
+        freeSpace.clear();
+        hash = 0;
+    }
+
+    /** the options this board was created with */
+    public GameOptions getOptions() {
+        GameOptions options = new GameOptions();
+        options.size = size;
+        options.numGamePieces = numGamePieces;
+        options.playJoker = playJoker;
+        options.jokerFrequency = jokerFrequency;
+        options.engineType = engineType;
+        options.randomType = randomType;
+        options.rules = rules.copy();
+        return options;
+    }
+
+    /**
+     * Copy this game, with a fresh random number generator. The copy knows
+     * the pieces already looked ahead at, but everything after that is
+     * random: use it to explore what may happen, without peeking at the
+     * real future of this game.
+     */
+    public GameBoard copy(long seed) {
+        GameBoard copy = new GameBoard(getOptions(), seed);
+        copy.copyFrom(this, seed);
+        return copy;
+    }
+
+    /**
+     * Make this board a copy of source, as in copy(seed), reusing this
+     * board's storage. Both boards must have been created with the same
+     * options, the board representation and random number generators aside.
+     */
+    public void copyFrom(GameBoard source, long seed) {
+        if (!canCopy(source))
+            throw new IllegalArgumentException("boards have different options");
+        board.copyFrom(source.board);
+        lineIndex.copyFrom(source.lineIndex);
+        freeCells.copyFrom(source.freeCells);
+        freeSpace.copyFrom(source.freeSpace);
+        pieceQueue.copyFrom(source.pieceQueue);
+        hash = source.hash;
+        undoLog.clear();
+        reseed(seed);
+    }
+
+    /** whether copyFrom() can make this board a copy of source */
+    boolean canCopy(GameBoard source) {
+        return source.size == size && source.numGamePieces == numGamePieces
+                && source.playJoker == playJoker && source.jokerFrequency == jokerFrequency
+                && source.rules.equals(rules);
+    }
+
+    /**
+     * Keep playing this game, but draw the pieces and placements that are
+     * not known yet from seed. The pieces already looked ahead at stay.
+     */
+    public void reseed(long seed) {
+        this.seed = seed;
+        if (randomType == RandomType.SPLITMIX) {
+            // unrelated streams, so what comes next doesn't decide where it goes
+            pieceRandom.setSeed(SplitMixRandom.seed(seed, 0));
+            placementRandom.setSeed(SplitMixRandom.seed(seed, 1));
+        } else {
+            pieceRandom.setSeed(seed);
+        }
+    }
+
+    /**
+     * Remember the current state of the game, so everything that happens
+     * after can be taken back with rewind(). Checkpoints nest: rewind to an
+     * older one takes back the newer ones too. Changes are only recorded
+     * while a checkpoint is open, and undoing costs as much as the changes
+     * made, without copying the board.
+     * 
+     * @return checkpoint for rewind()
+     */
+    public int checkpoint() {
+        int checkpoint = undoLog.size();
+        pushLong(pieceRandom.getState());
+        pushLong(placementRandom.getState());
+        undoLog.push(UNDO_CHECKPOINT);
+        return checkpoint;
+    }
+
+    /**
+     * Take back every change since checkpoint: moves, connect-5s, placed
+     * balls and the pieces and random numbers they used. Replaying the same
+     * moves after a rewind plays out the same way.
+     */
+    public void rewind(int checkpoint) {
+        if (checkpoint < 0 || checkpoint >= undoLog.size())
+            throw new IllegalArgumentException("no checkpoint " + checkpoint);
+        while (undoLog.size() > checkpoint)
+            undo();
+    }
+
+    /** close all checkpoints, keeping the game as it is */
+    public void discardCheckpoints() {
+        undoLog.clear();
+    }
+
+    /** undo the last entry of the undo log */
+    private void undo() {
+        int cell, slot, piece;
+        switch (undoLog.pop()) {
+        case UNDO_CHECKPOINT:
+            placementRandom.setState(popLong());
+            pieceRandom.setState(popLong());
+            break;
+        case UNDO_PUT:
+            slot = undoLog.pop();
+            cell = undoLog.pop();
+            hash ^= key(cell);
+            board.clear(cell);
+            freeCells.restore(cell, slot);
+            lineIndex.update(board, cell);
+            freeSpace.update(board, cell);
+            break;
+        case UNDO_MOVE:
+            piece = undoLog.pop();
+            slot = undoLog.pop();
+            int end = undoLog.pop(), start = undoLog.pop();
+            hash ^= key(end);
+            board.put(start, piece);
+            board.clear(end);
+            hash ^= key(start);
+            freeCells.restore(end, slot);
+            freeCells.remove(start);
+            lineIndex.update(board, end);
+            freeSpace.update(board, end);
+            lineIndex.update(board, start);
+            freeSpace.update(board, start);
+            break;
+        case UNDO_REMOVE:
+            piece = undoLog.pop();
+            cell = undoLog.pop();
+            board.put(cell, piece);
+            hash ^= key(cell);
+            freeCells.remove(cell);
+            lineIndex.update(board, cell);
+            freeSpace.update(board, cell);
+            break;
+        case UNDO_DRAW:
+            pieceQueue.removeLast();
+            break;
+        case UNDO_POLL:
+            pieceQueue.unpoll(undoLog.pop());
+            break;
+        default:
+            throw new IllegalStateException("corrupt undo log");
+        }
+    }
+
+    private void pushLong(long value) {
+        undoLog.push((int) (value >>> 32));
+        undoLog.push((int) value);
+    }
+
+    private long popLong() {
+        long low = undoLog.pop() & 0xFFFFFFFFL;
+        return ((long) undoLog.pop() << 32) | low;
+    }
+
+    /** whether changes are being recorded for rewind() */
+    private boolean recording() {
+        return undoLog.size() > 0;
+    }
+
+    /**
+     * Write everything needed to carry on this game from here: the balls,
+     * the order of the free cells, the upcoming pieces and the random number
+     * states. Read it back with readState().
+     */
+    public void writeState(DataOutput out) throws IOException {
+        int cells = size * size;
+        for (int cell = 0; cell < cells; cell++) {
+            if (board.isEmpty(cell)) {
+                out.writeByte(0);
+                continue;
+            }
+            // 1 for a Joker, type + 2 otherwise; top bit if it has moved
+            int code = board.isJoker(cell) ? 1 : board.getType(cell) + 2;
+            out.writeByte(board.hasMoved(cell) ? code | 0x80 : code);
+        }
+        Varint.write(out, freeCells.size());
+        for (int n = 0; n < freeCells.size(); n++)
+            Varint.write(out, freeCells.get(n));
+        Varint.write(out, pieceQueue.size());
+        for (int n = 0; n < pieceQueue.size(); n++)
+            out.writeByte(pieceQueue.get(n) + 1);
+        out.writeLong(pieceRandom.getState());
+        out.writeLong(placementRandom.getState());
+    }
+
+    /**
+     * Carry on the game written by writeState(), on a board with the same
+     * options. Closes all checkpoints.
+     * 
+     * @throws IOException
+     *             if the state is cut short or doesn't fit this board (the
+     *             board is unchanged)
+     */
+    public void readState(DataInput in) throws IOException {
+        readState(in, -1);
+    }
+
+    /**
+     * As readState(DataInput), but also fails if the state has no ball at
+     * cell, unless cell is -1
+     */
+    void readState(DataInput in, int ball) throws IOException {
+        // read and check everything before changing anything
+        int cells = size * size;
+        if (stateBuffer == null)
+            stateBuffer = new int[cells * 2 + MAX_LOOKAHEAD];
+        int[] codes = stateBuffer; // [cell]: piece code, Piece.EMPTY or FREE_CELL
+        int balls = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            int code = in.readUnsignedByte();
+            if (code == 0) {
+                codes[cell] = Piece.EMPTY;
+                continue;
+            }
+            int piece = (code & 0x7F) == 1 ? PieceQueue.JOKER : (code & 0x7F) - 2;
+            if (piece < PieceQueue.JOKER || piece >= numGamePieces
+                    || (piece == PieceQueue.JOKER && !playJoker))
+                throw new IOException("bad piece at cell " + cell + ": " + code);
+            codes[cell] = Piece.of(piece) | ((code & 0x80) != 0 ? Piece.MOVED : 0);
+            balls++;
+        }
+        if (ball >= 0 && codes[ball] == Piece.EMPTY)
+            throw new IOException("no ball at cell " + ball);
+        int free = Varint.read(in);
+        if (free != cells - balls)
+            throw new IOException(free + " free cells for " + balls + " balls");
+        for (int n = 0; n < free; n++) {
+            int cell = Varint.read(in);
+            if (cell < 0 || cell >= cells || codes[cell] != Piece.EMPTY)
+                throw new IOException("bad free cell: " + cell);
+            codes[cell] = FREE_CELL;
+            stateBuffer[cells + n] = cell;
+        }
+        int queued = Varint.read(in);
+        if (queued < 0 || queued > pieceQueue.capacity())
+            throw new IOException(queued + " upcoming pieces");
+        for (int n = 0; n < queued; n++) {
+            int piece = in.readUnsignedByte() - 1;
+            if (piece >= numGamePieces || (piece == PieceQueue.JOKER && !playJoker))
+                throw new IOException("bad upcoming piece: " + piece);
+            stateBuffer[cells * 2 + n] = piece;
+        }
+        long pieceState = in.readLong();
+        long placementState = in.readLong();
+
+        emptyBoard();
+        for (int cell = 0; cell < cells; cell++) {
+            if (codes[cell] == FREE_CELL)
+                continue;
+            board.put(cell, codes[cell]);
+            lineIndex.update(board, cell);
+            hash ^= key(cell);
+        }
+        freeSpace.rebuild(board);
+        freeCells.clear();
+        for (int n = 0; n < free; n++)
+            freeCells.add(stateBuffer[cells + n]);
+        pieceQueue.clear();
+        for (int n = 0; n < queued; n++)
+            pieceQueue.add(stateBuffer[cells * 2 + n]);
+        pieceRandom.setState(pieceState);
+        placementRandom.setState(placementState);
+        undoLog.clear();
     }
 
     /**
      * return Wuball located at i, j
      */
     public Wuball getWuball(BoardCell cell) {
-        return board[cell.i][cell.j];
+        return board.getWuball(index(cell));
+    }
+
+    /** flat index of cell, as used by the BoardEngine */
+    private int index(BoardCell cell) {
+        return cell.i * size + cell.j;
     }
 
     /**
@@ -46,7 +497,7 @@ class GameBoard {
     public List<Wuball> get(int num) {
         List<Wuball> result = this.peek(num);
         for (int y = 0; y < num; y++)
-            peekList.remove(y);
+            pollPiece();
         return result;
     }
 
@@ -54,27 +505,50 @@ class GameBoard {
      * Computes the next x Wuballs (and caches them for later)
      */
     public List<Wuball> peek(int num) {
-        List<Wuball> result = new LinkedList<Wuball>();
-        if (num > 0) {
-            for (int y = 0; y < num; y++) {
-                if (peekList.size() >= y + 1) {
-                    result.add(peekList.get(y));
-                } else {
-                    Wuball aBall = new Wuball();
-                    if (playJoker
-                            && randomGenerator.nextFloat() < jokerFrequency) {
-                        aBall.setJokerType();
-                    } else {
-                        aBall.setType(randomGenerator.nextInt(numGamePieces));
-                    }
-                    result.add(aBall);
-                    peekList.add(aBall);
-                }
-            }
-        }
+        Lookahead next = lookahead(num);
+        List<Wuball> result = new ArrayList<Wuball>(Math.max(num, 0));
+        for (int y = 0; y < num; y++)
+            result.add(Wuball.fromPiece(next.isJoker(y) ? Piece.JOKER : next.getType(y)));
         return result;
     }
 
+    /**
+     * Computes the next x pieces (and caches them for later). Unlike peek(),
+     * this makes no copies: the view reads the queue directly, and stays
+     * valid until the next piece is placed.
+     * 
+     * @param num
+     *            at most MAX_LOOKAHEAD
+     * @return the upcoming pieces, holding at least num of them
+     */
+    public Lookahead lookahead(int num) {
+        if (num > MAX_LOOKAHEAD)
+            throw new IllegalArgumentException("can't look " + num + " pieces ahead");
+        while (pieceQueue.size() < num) {
+            pieceQueue.add(nextPiece());
+            if (recording())
+                undoLog.push(UNDO_DRAW);
+        }
+        return pieceQueue;
+    }
+
+    /** draw a new game piece: a Joker, or a random type */
+    private int nextPiece() {
+        if (playJoker && pieceRandom.nextFloat() < jokerFrequency)
+            return PieceQueue.JOKER;
+        return pieceRandom.nextInt(numGamePieces);
+    }
+
+    /** take the next piece off the queue */
+    private int pollPiece() {
+        int piece = pieceQueue.poll();
+        if (recording()) {
+            undoLog.push(piece);
+            undoLog.push(UNDO_POLL);
+        }
+        return piece;
+    }
+
     /**
      * Move a piece from start to end, if valid.
      * Will update game board. 
@@ -84,100 +558,134 @@ class GameBoard {
      */
     public List<GameBoard.BoardCell> moveBall(GameBoard.BoardCell start, GameBoard.BoardCell end)
             throws IllegalMoveException {
-        // check if this is a valid move
-        short[][] distanceMap = findRoute(start, end);
-        if (distanceMap[end.i][end.j] > 0) { // java initializes array to 0
-            // a valid move! move the game piece
-            board[end.i][end.j] = board[start.i][start.j];
-            board[end.i][end.j].setMoved();
-            board[start.i][start.j] = null;
-            
-            
+        if (start == null || end == null)
+            throw new IllegalMoveException("Internal: no move commands");
+        if (!start.withinBounds() || !end.withinBounds()) {
+            throw new IllegalMoveException("Internal: move commands are out of bounds: "
+                    + start.toString() + " " + end.toString());
+        }
+        int length = moveBall(index(start), index(end), routeBuffer);
+        if (length > 0) {
+            // route from start, up to (but not including) end
             LinkedList<GameBoard.BoardCell> path = new LinkedList<GameBoard.BoardCell>();
-            GameBoard.BoardCell nc = end;
-            short distance = distanceMap[end.i][end.j];
-            while (distance > 1) {
-            	nc = (nc.i-1 >= 0 && distanceMap[nc.i-1][nc.j] == (distance-1)) ? new GameBoard.BoardCell(nc.i-1, nc.j) :
-            		 (nc.j+1 < size && distanceMap[nc.i][nc.j+1] == (distance-1)) ? new GameBoard.BoardCell(nc.i, nc.j+1) :
-                	 (nc.i+1 < size && distanceMap[nc.i+1][nc.j] == (distance-1)) ? new GameBoard.BoardCell(nc.i+1, nc.j) :
-                     new GameBoard.BoardCell(nc.i, nc.j-1);
-                path.add(0, nc);
-                distance--;
-            }
+            for (int x = 0; x < length - 1; x++)
+                path.add(new BoardCell(routeBuffer[x] / size, routeBuffer[x] % size));
             return path;
         }
         return null;
     }
 
     /**
-     * @return [][] a computed distance map with respect to <start> (0). The
-     *         computed distance at <end> is > 0 if a route exists, and
-     *         represents the shortest number of hops.
+     * Move a piece from cell start to cell end, if valid. Will update game
+     * board. Makes no allocations.
      * 
-     *         start - BoardCell containing game piece that user wants to move
-     *         end - BoardCell representing where user wants to move the game
-     *         piece
+     * @param path
+     *            receives the route, start and end included. Must hold
+     *            size*size cells.
+     * @return number of cells in the route, or 0 if there is no route (the
+     *         board is unchanged)
      */
-    private short[][] findRoute(BoardCell start, BoardCell end)
-            throws IllegalMoveException {
-        if (start == null || end == null)
-            throw new IllegalMoveException("Internal: no move commands");
-        if (!start.withinBounds() || !end.withinBounds()) {
-            throw new IllegalMoveException("Internal: move commands are out of bounds: "
-                    + start.toString() + " " + end.toString());
+    public int moveBall(int start, int end, int[] path) throws IllegalMoveException {
+        int length = findRoute(start, end, path);
+        if (length > 0) {
+            // a valid move! move the game piece
+            relocateBall(start, end);
         }
-        if (board[start.i][start.j] == null) {
+        return length;
+    }
+
+    /**
+     * Find the shortest route for the ball at cell start to the empty cell
+     * end, without moving it. Makes no allocations.
+     * 
+     * @param path
+     *            receives the route, start and end included. Must hold
+     *            size*size cells.
+     * @return number of cells in the route, or 0 if there is no route
+     */
+    public int findRoute(int start, int end, int[] path) throws IllegalMoveException {
+        checkMove(start, end);
+        return pathFinder.findPath(board, start, end, path);
+    }
+
+    /**
+     * Find every empty cell the ball at cell start can be moved to, in one
+     * flood fill. Does not change the board.
+     *
+     * @param mask
+     *            receives the reachable cells (see CellMask). Must hold
+     *            CellMask.words(size*size) longs.
+     * @return number of reachable cells
+     */
+    public int getReachable(int start, long[] mask) throws IllegalMoveException {
+        if (start < 0 || start >= size * size || board.isEmpty(start)) {
             throw new IllegalMoveException("Internal: no ball at start coordinates: "
-                    + start.toString());
-        }
-        if (board[end.i][end.j] != null) {
-            throw new IllegalMoveException("Internal: a ball exists at end coordinates: "
-                    + end.toString());
+                    + start);
         }
+        return pathFinder.reachable(board, start, mask);
+    }
 
-        // set up recursion
-        short[][] distanceMap = new short[size][size]; // initialized to 0
-        distanceMap[start.i][start.j] = 1;
-        findRouteRecurse(start, end, distanceMap, new LinkedList<BoardCell>());
-        return distanceMap;
+    /**
+     * Label the connected regions of empty space. Every ball can move to any
+     * cell of the regions next to it, so all legal moves can be enumerated
+     * from a single pass. Does not change the board.
+     *
+     * @param labels
+     *            receives the region (1, 2, ...) of each empty cell, and 0
+     *            for cells holding a ball. Must hold size*size ints.
+     * @return number of regions
+     */
+    public int labelEmptyRegions(int[] labels) {
+        return pathFinder.labelRegions(board, labels);
     }
 
-    /** Private method for recursively computing a distance map */
-    private void findRouteRecurse(BoardCell next, BoardCell end,
-            short[][] distanceMap, LinkedList<BoardCell> todoList) {
-        if (next.equals(end))
-            return;
+    /**
+     * List every legal move, in one pass over the empty space. Does not change
+     * the board, and makes no allocations.
+     *
+     * @param moves
+     *            receives the moves (see Move), ball by ball. Must hold
+     *            maxMoves() ints.
+     * @return number of moves written to moves
+     */
+    public int listMoves(int[] moves) {
+        return moveGenerator.generate(board, pathFinder, moves);
+    }
 
-        // try each direction one by one: top, right, bottom, left
-        findRouteRecurseSub(new BoardCell(next.i - 1, next.j),
-                distanceMap[next.i][next.j], distanceMap, todoList);
-        findRouteRecurseSub(new BoardCell(next.i, next.j + 1),
-                distanceMap[next.i][next.j], distanceMap, todoList);
-        findRouteRecurseSub(new BoardCell(next.i + 1, next.j),
-                distanceMap[next.i][next.j], distanceMap, todoList);
-        findRouteRecurseSub(new BoardCell(next.i, next.j - 1),
-                distanceMap[next.i][next.j], distanceMap, todoList);
-
-        if (todoList.size() > 0) {
-            findRouteRecurse(todoList.pollFirst(), end, distanceMap, todoList);
-        }
+    /** most moves listMoves() can find on this board */
+    public int maxMoves() {
+        return MoveGenerator.maxMoves(size * size);
     }
 
-    /** Private method for recursively computing a distance map */
-    private void findRouteRecurseSub(BoardCell cell, short lastDistance,
-            short[][] distanceMap, LinkedList<BoardCell> todoList) {
-        // skip if we've moved off the grid
-        if (cell.withinBounds()) {
-            // skip if there's a game piece already
-            if (board[cell.i][cell.j] == null) {
-                // skip if we've been to this cell already (or else we'd go in a
-                // loop)
-                if (distanceMap[cell.i][cell.j] == 0) { // java initializes
-                                                        // arrays to 0
-                    todoList.add(cell);
-                    distanceMap[cell.i][cell.j] = ++lastDistance;
-                }
-            }
+    /**
+     * Rate moves for move ordering, higher is better: cheap lookups, to pick
+     * the moves worth searching (see MoveGenerator.selectBest()).
+     *
+     * @param ordering
+     *            what to rate by: MoveGenerator.LINE, MOBILITY and/or BLOCKING
+     * @param keys
+     *            receives the rating of each move
+     */
+    public void rateMoves(int[] moves, int numMoves, int ordering, int[] keys) {
+        moveGenerator.rate(board, lineIndex, moves, numMoves, ordering, keys);
+    }
+
+    /**
+     * @throws IllegalMoveException
+     *             unless start holds a game piece and end is an empty cell
+     */
+    private void checkMove(int start, int end) throws IllegalMoveException {
+        if (start < 0 || end < 0 || start >= size * size || end >= size * size) {
+            throw new IllegalMoveException("Internal: move commands are out of bounds: "
+                    + start + " " + end);
+        }
+        if (board.isEmpty(start)) {
+            throw new IllegalMoveException("Internal: no ball at start coordinates: "
+                    + new BoardCell(start / size, start % size));
+        }
+        if (!board.isEmpty(end)) {
+            throw new IllegalMoveException("Internal: a ball exists at end coordinates: "
+                    + new BoardCell(end / size, end % size));
         }
     }
 
@@ -191,247 +699,354 @@ class GameBoard {
      */
     public List<? extends List<BoardCell>> connectFive(BoardCell cell) {
         LinkedList<LinkedList<BoardCell>> results = new LinkedList<LinkedList<BoardCell>>();
-        Wuball ball = board[cell.i][cell.j];
+        int ball = index(cell);
 
         /*
          * These are considered valid connect-5 configurations: - 5 or more in a
          * row - 5 or more in a column - 5 or more diagonally (x2 directions) It
          * is possible to have >1 connect-5 with one move
          */
-
-        int i, j; // cell coordinates
-        int x, y; // for loop indexes
-        int[] fi, fj, si, sj; // store cell coordinates for subroutine
-
-        // check vertical
-        fi = new int[size - (cell.i + 1)];
-        fj = new int[fi.length];
-        for (x = 0, i = cell.i + 1; i < size; x++, i++) {
-            fi[x] = i;
-            fj[x] = cell.j;
-        }
-        si = new int[cell.i];
-        sj = new int[si.length];
-        for (x = 0, i = cell.i - 1; i >= 0; x++, i--) {
-            si[x] = i;
-            sj[x] = cell.j;
-        }
-        connectFiveHelper(ball, fi, fj, si, sj, results);
-
-        // check horizontal
-        fj = new int[size - (cell.j + 1)];
-        fi = new int[fj.length];
-        for (x = 0, j = cell.j + 1; j < size; x++, j++) {
-            fi[x] = cell.i;
-            fj[x] = j;
-        }
-        sj = new int[cell.j];
-        si = new int[sj.length];
-        for (x = 0, j = cell.j - 1; j >= 0; x++, j--) {
-            si[x] = cell.i;
-            sj[x] = j;
-        }
-        connectFiveHelper(ball, fi, fj, si, sj, results);
-
-        // check diagonal negative slope
-        fi = new int[Math.min(size - (cell.i + 1), size - (cell.j + 1))];
-        fj = new int[fi.length];
-        for (x = 0, i = cell.i + 1, j = cell.j + 1; i < size && j < size; x++, i++, j++) {
-            fi[x] = i;
-            fj[x] = j;
+        int numLines = lineIndex.findLines(ball, lineBuffer);
+        for (int x = 0; x < numLines; x++) {
+            int d = lineBuffer[x * 3];
+            int step = geometry.step(d);
+            LinkedList<BoardCell> list = new LinkedList<BoardCell>();
+            for (int y = lineBuffer[x * 3 + 1]; y > 0; y--)
+                list.add(cellAt(ball - y * step));
+            for (int y = 1; y <= lineBuffer[x * 3 + 2]; y++)
+                list.add(cellAt(ball + y * step));
+            results.push(list);
         }
-        si = new int[Math.min(cell.i, cell.j)];
-        sj = new int[si.length];
-        for (x = 0, i = cell.i - 1, j = cell.j - 1; i >= 0 && j >= 0; x++, i--, j--) {
-            si[x] = i;
-            sj[x] = j;
-        }
-        connectFiveHelper(ball, fi, fj, si, sj, results);
-
-        // check diagonal positive slope
-        fi = new int[Math.min(size - (cell.i + 1), cell.j)];
-        fj = new int[fi.length];
-        for (x = 0, i = cell.i + 1, j = cell.j - 1; i < size && j >= 0; x++, i++, j--) {
-            fi[x] = i;
-            fj[x] = j;
-        }
-        si = new int[Math.min(cell.i, size - (cell.j + 1))];
-        sj = new int[si.length];
-        for (x = 0, i = cell.i - 1, j = cell.j + 1; i >= 0 && j < size; x++, i--, j++) {
-            si[x] = i;
-            sj[x] = j;
-        }
-        connectFiveHelper(ball, fi, fj, si, sj, results);
 
         // if there are any connect-5 results,
         // remove the game pieces from the board
-        if (results.size() > 0) {
-            board[cell.i][cell.j] = null;
-            numFreeSlots++;
-
-            for (x = 0; x < results.size(); x++) {
-                LinkedList<BoardCell> list = results.get(x);
-                for (y = 0; y < list.size(); y++) {
-                    board[list.get(y).i][list.get(y).j] = null;
-                    numFreeSlots++;
+        removeLines(ball, numLines, null);
+        return results;
+    }
+
+    /**
+     * Compute all connect-5 opportunities using cell as point of reference,
+     * and remove them from the board. What makes a line is up to the rules
+     * of the game (5 in a row on any axis by default). Makes no
+     * allocations.
+     * 
+     * @return total length of the connect-5s found, not including cell
+     *         itself, or 0 if there are none. This adds up the sizes of the
+     *         lists connectFive(BoardCell) would return.
+     */
+    public int connectFive(int cell) {
+        int numLines = lineIndex.findLines(cell, lineBuffer);
+        int total = lineBalls(numLines);
+        removeLines(cell, numLines, null);
+        return total;
+    }
+
+    /** balls in the first numLines lines of lineBuffer, not counting the reference ball */
+    private int lineBalls(int numLines) {
+        int total = 0;
+        for (int x = 0; x < numLines; x++)
+            total += lineBuffer[x * 3 + 1] + lineBuffer[x * 3 + 2];
+        return total;
+    }
+
+    /**
+     * remove ball and the first numLines lines of lineBuffer from the board,
+     * and add them to turn, unless it's null
+     */
+    private void removeLines(int ball, int numLines, TurnResult turn) {
+        if (numLines == 0)
+            return;
+        if (turn != null)
+            turn.remove(ball, pieceAt(ball));
+        removeBall(ball);
+        for (int x = 0; x < numLines; x++) {
+            int d = lineBuffer[x * 3];
+            int step = geometry.step(d);
+            for (int y = -lineBuffer[x * 3 + 1]; y <= lineBuffer[x * 3 + 2]; y++) {
+                int c = ball + y * step;
+                // the XXJJJYY case shares Jokers between two connect-5s
+                if (!board.isEmpty(c)) {
+                    if (turn != null)
+                        turn.remove(c, pieceAt(c));
+                    removeBall(c);
                 }
             }
         }
-
-        return results;
     }
 
     /**
-     * Helper method that calculates the connect-5 opportunities. It sweeps on
-     * both sides according to the {i, j} series provided in the method params
+     * Play a whole turn by the rules of the game: move the ball at start to
+     * end and remove the lines it makes, or else place the balls of the
+     * turn. With cascading rules, the lines the placed balls make are then
+     * found all at once, on the board with every ball placed, and removed
+     * together. Makes no allocations. The turn listener, if any, gets the
+     * turn when it's done.
      * 
-     * @param ball
-     *            that the user moved
-     * @param fi
-     *            first series, row i
-     * @param fj
-     *            first series, col j
-     * @param si
-     *            second series, row i
-     * @param sj
-     *            second series, row j
-     * @param results
-     *            [][] a list of all connect-5 opportunities. Each connect-5
-     *            opportunity is in turn a list (of BoardCells). The length of
-     *            each connect-5 is actually >=4, as it doesn't include the
-     *            point of reference.
-     */
-    private void connectFiveHelper(Wuball ball, int[] fi, int[] fj, int[] si,
-            int[] sj, LinkedList<LinkedList<BoardCell>> results) {
-
-        LinkedList<BoardCell> vList = new LinkedList<BoardCell>();
-        Wuball firstNonJokerBall = null;
-
-        // Note: Joker ball matches any ball, but all the other non-Joker balls
-        // must match
-        // one another to be a valid connect-5.
-        //
-        // For each direction (vertical, horizontal, diagonal x2) we try to
-        // consume balls
-        // on both sides.
-        //
-        // If we moved a non-Joker ball, the logic is simple: consume balls
-        // until the next
-        // ball doesn't match.
-        //
-        // If we moved a Joker ball, we don't know until later what the actual
-        // matching piece is.
-        // We start on one side, and the first non-Joker piece we see is what
-        // all others have to match.
-        // -- It's possible to have no specific matching piece (i.e. 5 or more
-        // jokers in a row)
-        // -- It's possible to have 2 matches (e.g. XXJJJYY, joker pieces
-        // flanked by different
-        // consecutive pieces on either side, each utilizing the jokers to
-        // connect-5)
-
-        int x;
-        for (x = 0; x < fi.length; x++) {
-            if (ball.equals(board[fi[x]][fj[x]])) {
-                // If user moved a regular ball, add it, we're done.
-                // Otherwise, the joker case is easy: joker matches joker.
-                if (!ball.isJokerBall() || board[fi[x]][fj[x]].isJokerBall())
-                    vList.add(new BoardCell(fi[x], fj[x]));
-                else {
-                    // User moved a joker ball, and this is a normal ball
-                    // Non-Joker balls must match, so keep track of the first
-                    // one we see
-                    if (firstNonJokerBall == null
-                            || firstNonJokerBall.equals(board[fi[x]][fj[x]])) {
-                        if (firstNonJokerBall == null)
-                            firstNonJokerBall = board[fi[x]][fj[x]];
-                        vList.add(new BoardCell(fi[x], fj[x]));
-                    } else
-                        break;
+     * @param turn
+     *            receives what changed; made for a board of this size
+     * @return false if there is no route from start to end (the board and
+     *         turn are unchanged)
+     * @throws GameOverException
+     *             if the board filled up while placing balls. The lines the
+     *             balls placed until then make are still removed and scored,
+     *             with cascading rules, and turn has all of it.
+     */
+    public boolean playTurn(int start, int end, TurnResult turn) throws IllegalMoveException,
+            GameOverException {
+        int length = moveBall(start, end, turn.pathBuffer());
+        if (length == 0)
+            return false;
+        turn.reset(start, end, pieceAt(end), length);
+        try {
+            int numLines = lineIndex.findLines(end, lineBuffer);
+            if (numLines > 0) {
+                turn.connect(rules.points(lineBalls(numLines)));
+                removeLines(end, numLines, turn);
+                return true;
+            }
+            try {
+                for (int x = rules.ballsPerTurn; x > 0; x--) {
+                    int cell = placeNextBall();
+                    turn.place(cell, pieceAt(cell));
                 }
-            } else
-                break;
+            } finally {
+                if (rules.cascade)
+                    cascade(turn);
+            }
+            return true;
+        } finally {
+            if (turnListener != null)
+                turnListener.turnPlayed(this, turn);
         }
-        boolean possibleSecondMatch = true; // Joker case: if user moves a
-                                            // Joker, possible to have two
-                                            // connect-5s
-        for (x = 0; x < si.length; x++) {
-            if (ball.equals(board[si[x]][sj[x]])) {
-                // If user moved a regular ball, add it, we're done.
-                // Otherwise, the joker case is easy: joker matches joker.
-                if (!ball.isJokerBall() || board[si[x]][sj[x]].isJokerBall())
-                    vList.add(0, new BoardCell(si[x], sj[x]));
-                else {
-                    // User moved a joker ball, and this is a normal ball
-                    // Non-Joker balls must match, so keep track of the first
-                    // one we see
-                    if (firstNonJokerBall == null
-                            || firstNonJokerBall.equals(board[si[x]][sj[x]])) {
-                        if (firstNonJokerBall == null)
-                            firstNonJokerBall = board[si[x]][sj[x]];
-                        vList.add(0, new BoardCell(si[x], sj[x]));
-                        possibleSecondMatch = false; // same ball, so no longer
-                                                     // possible to have another
-                                                     // connect-5
-                    } else if (possibleSecondMatch) {
-                        // Situation here is that we have jokers in the middle
-                        // flanked by different
-                        // pieces on either side. Possibly have more than 1
-                        // connect-5 (e.g. XXJJJYY)
-
-                        // Store the first connect-5, if it exists
-                        LinkedList<BoardCell> tmpList = new LinkedList<BoardCell>(vList);
-                        if (tmpList.size() >= 4) results.push(tmpList);
-
-                        // Try for a second connect-5.
-                        // Keep the consecutive Jokers we've seen already.
-                        vList.clear();
-                        firstNonJokerBall = board[si[x]][sj[x]];
-                        vList.add(0, new BoardCell(si[x], sj[x]));
-                        possibleSecondMatch = false;
-                        for (int y = 0; y < tmpList.size(); y++) {
-                            BoardCell nextCell = tmpList.get(y);
-                            if (board[nextCell.i][nextCell.j].isJokerBall())
-                                vList.add(nextCell);
-                            else
-                                break;
-                        }
-                    } else
-                        break;
+    }
+
+    /** have listener get every turn played with playTurn(), or none if null */
+    public void setTurnListener(TurnListener listener) {
+        this.turnListener = listener;
+    }
+
+    /**
+     * Play a whole turn, see playTurn(int, int, TurnResult)
+     */
+    public boolean playTurn(BoardCell start, BoardCell end, TurnResult turn)
+            throws IllegalMoveException, GameOverException {
+        return playTurn(index(start), index(end), turn);
+    }
+
+    /**
+     * Find the lines made by the balls placed in turn, before any of them is
+     * removed, and then remove them all. Every placed ball that makes lines
+     * scores as a connect-5, but a ball shared by several lines only counts
+     * once.
+     */
+    private void cascade(TurnResult turn) {
+        CellMask.clear(lineMask);
+        int first = turn.getNumRemoved();
+        for (int n = 0; n < turn.getNumPlaced(); n++) {
+            int ball = turn.getPlaced(n);
+            int numLines = lineIndex.findLines(ball, lineBuffer);
+            if (numLines == 0)
+                continue;
+            if (!CellMask.contains(lineMask, ball)) {
+                CellMask.add(lineMask, ball);
+                turn.remove(ball, pieceAt(ball));
+            }
+            int others = 0;
+            for (int x = 0; x < numLines; x++) {
+                int d = lineBuffer[x * 3];
+                int step = geometry.step(d);
+                for (int y = -lineBuffer[x * 3 + 1]; y <= lineBuffer[x * 3 + 2]; y++) {
+                    int c = ball + y * step;
+                    if (y != 0 && !CellMask.contains(lineMask, c)) {
+                        CellMask.add(lineMask, c);
+                        turn.remove(c, pieceAt(c));
+                        others++;
+                    }
                 }
-            } else
-                break; // this ball doesn't match the ball the user moved
+            }
+            turn.score(rules.points(others));
+        }
+        for (int n = first; n < turn.getNumRemoved(); n++)
+            removeBall(turn.getRemoved(n));
+    }
+
+    /** BoardCell for a flat cell index */
+    private BoardCell cellAt(int cell) {
+        return new BoardCell(cell / size, cell % size);
+    }
+
+    /*
+     * All changes to the board go through these, to keep the free cells,
+     * line index, hash and undo log in sync
+     */
+
+    private void putBall(int cell, int piece) {
+        board.put(cell, piece);
+        hash ^= key(cell);
+        int slot = freeCells.remove(cell);
+        lineIndex.update(board, cell);
+        freeSpace.update(board, cell);
+        if (recording()) {
+            undoLog.push(cell);
+            undoLog.push(slot);
+            undoLog.push(UNDO_PUT);
+        }
+    }
+
+    private void relocateBall(int start, int end) {
+        int piece = board.getPiece(start);
+        hash ^= key(start);
+        board.move(start, end);
+        hash ^= key(end);
+        freeCells.add(start);
+        int slot = freeCells.remove(end);
+        lineIndex.update(board, start);
+        freeSpace.update(board, start);
+        lineIndex.update(board, end);
+        freeSpace.update(board, end);
+        if (recording()) {
+            undoLog.push(start);
+            undoLog.push(end);
+            undoLog.push(slot);
+            undoLog.push(piece);
+            undoLog.push(UNDO_MOVE);
         }
-        if (vList.size() >= 4)
-            results.push(vList);
+    }
+
+    private void removeBall(int cell) {
+        if (recording()) {
+            undoLog.push(cell);
+            undoLog.push(board.getPiece(cell));
+            undoLog.push(UNDO_REMOVE);
+        }
+        hash ^= key(cell);
+        board.clear(cell);
+        freeCells.add(cell);
+        lineIndex.update(board, cell);
+        freeSpace.update(board, cell);
     }
 
     /**
      * place new Wuball on the game board and return its location
      */
     public GameBoard.BoardCell placeBall() throws GameOverException {
-        if (this.numFreeSlots <= 0)
+        return cellAt(placeNextBall());
+    }
+
+    /**
+     * place new Wuball on the game board and return its flat cell index
+     */
+    public int placeNextBall() throws GameOverException {
+        if (freeCells.size() <= 0)
             throw new GameOverException();
 
-        Wuball aBall = get(1).get(0);
-        int nextSlot = randomGenerator.nextInt(this.numFreeSlots);
-        BoardCell result = null;
-
-        int count = 0;
-        OUTER: for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (board[i][j] == null) {
-                    if (++count > nextSlot) {
-                        board[i][j] = aBall;
-                        this.numFreeSlots--;
-                        result = new BoardCell(i, j);
-                        break OUTER;
-                    }
-                }
-            }
+        lookahead(1);
+        int piece = pieceQueue.get(0);
+        int cell = freeCells.get(placementRandom.nextInt(freeCells.size()));
+        pollPiece();
+        putBall(cell, Piece.of(piece));
+        return cell;
+    }
+
+    /**
+     * Put ball at the flat cell index, or clear the cell if ball is null. For
+     * setting up positions in tools and benchmarks; games go through moveBall
+     * and placeBall.
+     */
+    void setWuball(int cell, Wuball ball) {
+        if (!board.isEmpty(cell))
+            removeBall(cell);
+        if (ball != null)
+            putBall(cell, ball.toPiece());
+    }
+
+    /** the ball at cell: type, or PieceQueue.JOKER */
+    private int pieceAt(int cell) {
+        return Piece.piece(board.getPiece(cell));
+    }
+
+    /** Zobrist key of the ball at cell */
+    private long key(int cell) {
+        return zobrist.key(board.isJoker(cell) ? numGamePieces : board.getType(cell), cell);
+    }
+
+    /**
+     * 64-bit hash of the balls on the board (not the upcoming pieces), kept
+     * up to date on every change. Equal positions have equal hashes, on any
+     * board with the same options, so it can key a TranspositionTable.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * getHash() with the next upcoming pieces hashed in too, as many as have
+     * been looked ahead at, up to num: what a search knows of the position
+     * before the next placement.
+     */
+    public long getHash(int num) {
+        long withUpcoming = hash;
+        for (int n = 0; n < Math.min(num, pieceQueue.size()); n++) {
+            int piece = pieceQueue.get(n);
+            withUpcoming ^= zobrist.upcomingKey(piece == PieceQueue.JOKER ? numGamePieces : piece,
+                    n);
         }
+        return withUpcoming;
+    }
 
-        return result;
+    /** whether the ball at the flat cell index is a Joker piece, false for empty cells */
+    public boolean isJoker(int cell) {
+        return board.isJoker(cell);
+    }
+
+    /**
+     * type of the ball at the flat cell index, Piece.color(Piece.EMPTY) for
+     * empty cells (undefined for Jokers)
+     */
+    public int getType(int cell) {
+        return board.getType(cell);
+    }
+
+    /**
+     * Length of the longest line, the cell included, that a piece would be
+     * part of if it were put on the flat cell index. A quick way for bots
+     * to rate a destination: the line length of the rules or more would
+     * connect-5.
+     * 
+     * @param piece
+     *            ball type, or PieceQueue.JOKER
+     */
+    public int potentialLine(int cell, int piece) {
+        return lineIndex.potential(cell, piece == PieceQueue.JOKER ? numGamePieces : piece);
+    }
+
+    /**
+     * potentialLine() of the ball move (see Move) takes, at its destination,
+     * with its start cell empty: the quick rating of a move that bots play
+     * out and look ahead with
+     */
+    public int moveLine(int move) {
+        int start = Move.start(move);
+        return lineIndex.potential(Move.end(move), lineIndex.piece(start), start);
+    }
+
+    /** whether there is no ball at the flat cell index */
+    public boolean isEmpty(int cell) {
+        return board.isEmpty(cell);
+    }
+
+    /** number of empty cells left */
+    public int getNumFreeSlots() {
+        return freeCells.size();
+    }
+
+    /**
+     * How much room the game has left: empty regions, mobility, danger of
+     * filling up. A live view, kept up to date on every change, so reading
+     * it costs nothing.
+     */
+    public BoardHealth getHealth() {
+        return freeSpace;
     }
 
     class BoardCell {
@@ -0,0 +1,27 @@
+package com.vincewu.wuballs;
+
+/**
+ * Game options for a GameBoard. The board copies them when it's created, so
+ * one GameOptions can be reused (and changed) for any number of boards.
+ */
+class GameOptions {
+    public int size = 9; // the x in an x*x board, GameBoard.MIN_SIZE to MAX_SIZE
+    public int numGamePieces = 7; // number of game piece types, not including joker piece
+    public boolean playJoker = true; // whether to play joker piece
+    public float jokerFrequency = 0.2f; // how often the joker ball plays
+    public GameBoard.EngineType engineType = GameBoard.EngineType.BITBOARD; // board representation
+    public GameBoard.RandomType randomType = GameBoard.RandomType.LEGACY; // random number generators
+    public GameRules rules = new GameRules(); // what makes a line, scoring, balls per turn
+
+    public GameOptions copy() {
+        GameOptions copy = new GameOptions();
+        copy.size = size;
+        copy.numGamePieces = numGamePieces;
+        copy.playJoker = playJoker;
+        copy.jokerFrequency = jokerFrequency;
+        copy.engineType = engineType;
+        copy.randomType = randomType;
+        copy.rules = rules.copy();
+        return copy;
+    }
+}
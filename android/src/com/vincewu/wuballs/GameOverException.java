@@ -3,4 +3,12 @@ package com.vincewu.wuballs;
 public class GameOverException extends Exception {
 
     private static final long serialVersionUID = -6598326230735032284L;
+
+    /**
+     * No stack trace: this ends every game, and every playout of a search,
+     * so filling one in would cost more garbage than the rest of the game.
+     */
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
 }
@@ -0,0 +1,24 @@
+package com.vincewu.wuballs;
+
+/**
+ * Random number generator for a game. The state fits in a long, so a game
+ * can save the point it's at and come back to it (see
+ * GameBoard.checkpoint()).
+ */
+interface GameRandom {
+
+    /** restart the sequence from seed */
+    public void setSeed(long seed);
+
+    /** uniformly distributed in [0, bound) */
+    public int nextInt(int bound);
+
+    /** uniformly distributed in [0, 1) */
+    public float nextFloat();
+
+    /** the point in the sequence, for setState() */
+    public long getState();
+
+    /** go back (or forward) to a point returned by getState() */
+    public void setState(long state);
+}
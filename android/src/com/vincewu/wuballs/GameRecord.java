@@ -0,0 +1,39 @@
+package com.vincewu.wuballs;
+
+/**
+ * Compact binary record of a game: the options and seed it started from and
+ * the moves played, a couple of bytes each. Games are deterministic, so
+ * that's all it takes to play a game back (see GameReplay). Checkpoints of
+ * the full game state can be mixed in, so a replay can start near the move
+ * it's after instead of from the first one.
+ *
+ * Format, written by GameRecordWriter and read by GameRecordReader:
+ * 
+ * <pre>
+ * header:  version (byte), size (byte), numGamePieces (byte),
+ *          flags (byte: 1 playJoker, 2 SPLITMIX random),
+ *          jokerFrequency (float), seed (long), rules (GameRules.write())
+ * entries, each starting with a varint tag (see Varint):
+ *   tag >= 2  move from cell tag - 2, then the end cell (varint)
+ *   tag 1     checkpoint after the moves so far: score (varint), state
+ *             length (varint), state (GameBoard.writeState())
+ *   tag 0     end of the game
+ * </pre>
+ * 
+ * The game starts with the initial balls of its rules placed, and every
+ * move is a turn as played by Simulator.playTurn().
+ */
+final class GameRecord {
+
+    static final int VERSION = 2;
+
+    static final int TAG_END = 0;
+    static final int TAG_CHECKPOINT = 1;
+    static final int TAG_MOVE = 2; // and up
+
+    static final int FLAG_JOKER = 1;
+    static final int FLAG_SPLITMIX = 2;
+
+    private GameRecord() {
+    }
+}
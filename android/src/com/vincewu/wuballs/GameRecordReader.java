@@ -0,0 +1,115 @@
+package com.vincewu.wuballs;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads games in the GameRecord format, one entry at a time: begin() reads
+ * the header of the next game, and next() steps through its moves and
+ * checkpoints until END.
+ */
+class GameRecordReader {
+
+    /* what next() found */
+    public static final int END = 0;
+    public static final int CHECKPOINT = 1;
+    public static final int MOVE = 2;
+
+    private final DataInputStream in;
+
+    private final GameOptions options = new GameOptions(); // reused for every game
+    private long seed;
+    private int move = Move.NONE; // last move read
+    private int score; // score at the last checkpoint read
+    private byte[] state = new byte[0]; // state at the last checkpoint read
+    private int stateLength;
+
+    public GameRecordReader(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * Read the header of the next game
+     * 
+     * @return false if there are no more games
+     */
+    public boolean begin() throws IOException {
+        int version = in.read();
+        if (version < 0)
+            return false;
+        if (version != GameRecord.VERSION)
+            throw new IOException("unknown game record version: " + version);
+        options.size = in.readUnsignedByte();
+        options.numGamePieces = in.readUnsignedByte();
+        int flags = in.readUnsignedByte();
+        options.playJoker = (flags & GameRecord.FLAG_JOKER) != 0;
+        options.randomType = (flags & GameRecord.FLAG_SPLITMIX) != 0 ? GameBoard.RandomType.SPLITMIX
+                : GameBoard.RandomType.LEGACY;
+        options.jokerFrequency = in.readFloat();
+        seed = in.readLong();
+        options.rules.readFrom(in);
+        return true;
+    }
+
+    /** @return MOVE, CHECKPOINT or END */
+    public int next() throws IOException {
+        int tag = Varint.read(in);
+        if (tag >= GameRecord.TAG_MOVE) {
+            move = Move.pack(tag - GameRecord.TAG_MOVE, Varint.read(in));
+            return MOVE;
+        }
+        if (tag == GameRecord.TAG_CHECKPOINT) {
+            score = Varint.read(in);
+            stateLength = Varint.read(in);
+            if (state.length < stateLength)
+                state = new byte[stateLength];
+            in.readFully(state, 0, stateLength);
+            return CHECKPOINT;
+        }
+        return END;
+    }
+
+    /**
+     * options of the current game, to create a GameBoard for it. Changes with
+     * the next begin(): copy them to keep them.
+     */
+    public GameOptions getOptions() {
+        return options;
+    }
+
+    /** whether board was created with the options of the current game */
+    public boolean fits(GameBoard board) {
+        return board.size == options.size && board.numGamePieces == options.numGamePieces
+                && board.playJoker == options.playJoker
+                && board.jokerFrequency == options.jokerFrequency
+                && board.getRandomType() == options.randomType
+                && board.hasRules(options.rules);
+    }
+
+    /** board size of the current game */
+    public int getSize() {
+        return options.size;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /** the move next() just read */
+    public int getMove() {
+        return move;
+    }
+
+    /** the score at the checkpoint next() just read */
+    public int getScore() {
+        return score;
+    }
+
+    /** copy of the state at the checkpoint next() just read, for GameBoard.readState() */
+    public byte[] getState() {
+        byte[] copy = new byte[stateLength];
+        System.arraycopy(state, 0, copy, 0, stateLength);
+        return copy;
+    }
+}
@@ -0,0 +1,69 @@
+package com.vincewu.wuballs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes games in the GameRecord format as they're played: begin(), then
+ * move() for every move and checkpoint() whenever wanted, then end(). Any
+ * number of games can be written one after the other to the same stream.
+ */
+class GameRecordWriter {
+
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream stateBytes = new ByteArrayOutputStream();
+    private final DataOutputStream state = new DataOutputStream(stateBytes);
+    private int moves; // in the current game
+
+    public GameRecordWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    /** start recording the game played on board, before its first move */
+    public void begin(GameBoard board) throws IOException {
+        GameOptions options = board.getOptions();
+        out.writeByte(GameRecord.VERSION);
+        out.writeByte(board.size);
+        out.writeByte(options.numGamePieces);
+        out.writeByte((options.playJoker ? GameRecord.FLAG_JOKER : 0)
+                | (options.randomType == GameBoard.RandomType.SPLITMIX ? GameRecord.FLAG_SPLITMIX
+                        : 0));
+        out.writeFloat(options.jokerFrequency);
+        out.writeLong(board.getSeed());
+        options.rules.write(out);
+        moves = 0;
+    }
+
+    /** record a move (see Move) */
+    public void move(int move) throws IOException {
+        Varint.write(out, Move.start(move) + GameRecord.TAG_MOVE);
+        Varint.write(out, Move.end(move));
+        moves++;
+    }
+
+    /** record the full state of board, after the moves recorded so far */
+    public void checkpoint(GameBoard board, int score) throws IOException {
+        stateBytes.reset();
+        board.writeState(state);
+        Varint.write(out, GameRecord.TAG_CHECKPOINT);
+        Varint.write(out, score);
+        Varint.write(out, stateBytes.size());
+        stateBytes.writeTo(out);
+    }
+
+    /** the game is over */
+    public void end() throws IOException {
+        Varint.write(out, GameRecord.TAG_END);
+    }
+
+    /** moves recorded in the current game */
+    public int getMoves() {
+        return moves;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
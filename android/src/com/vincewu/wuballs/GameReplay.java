@@ -0,0 +1,188 @@
+package com.vincewu.wuballs;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Plays back a recorded game (see GameRecord) to the position after any of
+ * its moves. Starts from the last checkpoint at or before that move, so with
+ * a checkpoint every n moves no position is more than n - 1 moves away.
+ */
+class GameReplay {
+
+    private final GameOptions options;
+    private final long seed;
+    private final int[] moves;
+    private final int[] checkpointMoves; // moves played before each checkpoint, ascending
+    private final int[] checkpointScores;
+    private final byte[][] checkpointStates;
+    private final TurnResult turn; // scratch for playTurn
+
+    /**
+     * Read the next game from reader
+     * 
+     * @return null if there are no more games
+     */
+    public static GameReplay read(GameRecordReader reader) throws IOException {
+        if (!reader.begin())
+            return null;
+        return new GameReplay(reader);
+    }
+
+    private GameReplay(GameRecordReader reader) throws IOException {
+        this.options = reader.getOptions().copy();
+        this.seed = reader.getSeed();
+        GameBoard board;
+        try {
+            board = newBoard();
+        } catch (IllegalArgumentException iaex) {
+            throw new IOException("can't replay a game with these options: " + iaex.getMessage());
+        }
+        this.turn = new TurnResult(board.size);
+
+        int[] moves = new int[64];
+        int numMoves = 0;
+        int[] checkpointMoves = new int[4];
+        int[] checkpointScores = new int[4];
+        byte[][] checkpointStates = new byte[4][];
+        int numCheckpoints = 0;
+        int entry;
+        while ((entry = reader.next()) != GameRecordReader.END) {
+            if (entry == GameRecordReader.MOVE) {
+                if (numMoves == moves.length)
+                    moves = Arrays.copyOf(moves, numMoves * 2);
+                moves[numMoves++] = reader.getMove();
+            } else {
+                if (numCheckpoints == checkpointMoves.length) {
+                    checkpointMoves = Arrays.copyOf(checkpointMoves, numCheckpoints * 2);
+                    checkpointScores = Arrays.copyOf(checkpointScores, numCheckpoints * 2);
+                    checkpointStates = Arrays.copyOf(checkpointStates, numCheckpoints * 2);
+                }
+                checkpointMoves[numCheckpoints] = numMoves;
+                checkpointScores[numCheckpoints] = reader.getScore();
+                checkpointStates[numCheckpoints++] = reader.getState();
+            }
+        }
+        this.moves = Arrays.copyOf(moves, numMoves);
+        this.checkpointMoves = Arrays.copyOf(checkpointMoves, numCheckpoints);
+        this.checkpointScores = Arrays.copyOf(checkpointScores, numCheckpoints);
+        this.checkpointStates = Arrays.copyOf(checkpointStates, numCheckpoints);
+    }
+
+    /**
+     * Play the game reader has just begun, from the start to the end, on
+     * board. Skips checkpoints, and creates no garbage.
+     * 
+     * @param board
+     *            with the options of the game (see GameRecordReader.fits())
+     * @param turn
+     *            scratch, for a board of the same size
+     * @return the final score
+     * @throws IOException
+     *             if the record doesn't play out
+     */
+    public static int play(GameRecordReader reader, GameBoard board, TurnResult turn)
+            throws IOException {
+        if (!reader.fits(board))
+            throw new IOException("game record doesn't fit the board");
+        board.restart(reader.getSeed());
+        int score = 0;
+        boolean over = false;
+        try {
+            for (int x = board.getInitialBalls(); x > 0; x--)
+                board.placeNextBall();
+            int entry;
+            while ((entry = reader.next()) != GameRecordReader.END) {
+                if (entry != GameRecordReader.MOVE)
+                    continue;
+                if (over)
+                    throw new IOException("game goes on after it's over");
+                int move = reader.getMove();
+                try {
+                    score += Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+                } catch (GameOverException goe) {
+                    over = true;
+                }
+            }
+        } catch (IllegalMoveException imex) {
+            throw new IOException("illegal move in game record: " + imex.getMessage());
+        } catch (GameOverException goe) {
+            throw new IOException("board filled up before the first move");
+        }
+        return score;
+    }
+
+    /** a board for replay() */
+    public GameBoard newBoard() {
+        return new GameBoard(options, seed);
+    }
+
+    public GameOptions getOptions() {
+        return options;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /** number of moves in the game */
+    public int getNumMoves() {
+        return moves.length;
+    }
+
+    /** move n (see Move) */
+    public int getMove(int n) {
+        return moves[n];
+    }
+
+    /**
+     * Set board to the position after the first n moves of the game
+     * 
+     * @param board
+     *            a board from newBoard(), or any board with the same options
+     * @return the score after n moves
+     * @throws IOException
+     *             if the record doesn't play out: a checkpoint doesn't fit,
+     *             a move is illegal, or the game goes on after it's over
+     */
+    public int replay(int n, GameBoard board) throws IOException {
+        if (n < 0 || n > moves.length)
+            throw new IndexOutOfBoundsException("move " + n + " of " + moves.length);
+        int score = 0, from = 0;
+        int c = Arrays.binarySearch(checkpointMoves, n);
+        if (c < 0)
+            c = -c - 2; // last checkpoint before n
+        else
+            while (c + 1 < checkpointMoves.length && checkpointMoves[c + 1] == n)
+                c++;
+        try {
+            if (c >= 0) {
+                board.restart(seed);
+                board.readState(new DataInputStream(new ByteArrayInputStream(
+                        checkpointStates[c])));
+                score = checkpointScores[c];
+                from = checkpointMoves[c];
+            } else {
+                board.restart(seed);
+                for (int x = board.getInitialBalls(); x > 0; x--)
+                    board.placeNextBall();
+            }
+            for (int m = from; m < n; m++) {
+                try {
+                    score += Simulator.playTurn(board, Move.start(moves[m]), Move.end(moves[m]),
+                            turn);
+                } catch (GameOverException goe) {
+                    if (m < moves.length - 1)
+                        throw new IOException("game goes on after it's over, at move " + m);
+                }
+            }
+        } catch (IllegalMoveException imex) {
+            throw new IOException("illegal move in game record: " + imex.getMessage());
+        } catch (GameOverException goe) {
+            throw new IOException("board filled up before the first move");
+        }
+        return score;
+    }
+}
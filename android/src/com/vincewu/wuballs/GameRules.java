@@ -0,0 +1,140 @@
+package com.vincewu.wuballs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Rules of a game: what makes a line, how it scores, and how many balls
+ * come into play. Part of GameOptions; the board copies them when it's
+ * created and builds them into its line detection, so a variant plays as
+ * fast as the standard game.
+ */
+class GameRules {
+
+    /* Axes a line can lie on, for axes: bit d is direction d of LineIndex */
+    public static final int VERTICAL = 1;
+    public static final int HORIZONTAL = 2;
+    public static final int DIAGONAL = 4; // top left to bottom right
+    public static final int ANTI_DIAGONAL = 8; // top right to bottom left
+    public static final int ALL_AXES = VERTICAL | HORIZONTAL | DIAGONAL | ANTI_DIAGONAL;
+
+    private static final int FLAG_WILD_JOKERS = 1;
+    private static final int FLAG_CASCADE = 2;
+
+    public int lineLength = 5; // fewest balls in a row that make a line
+    public int axes = ALL_AXES; // axes lines can lie on, see above
+    public boolean wildJokers = true; // whether a Joker matches any ball, or only Jokers
+    public int pointsPerLine = 2; // points for a move that makes lines
+    public int pointsPerBall = 2; // points for every other ball in the lines
+    public int ballsPerTurn = 3; // balls placed after a move that doesn't make a line
+    public int initialBalls = 5; // balls on the board when a game starts
+    public boolean cascade = true; // whether placed balls that make a line are removed and score
+
+    /**
+     * @param balls
+     *            balls removed besides the one that made the lines (see
+     *            GameBoard.connectFive())
+     * @return points for the lines, 0 if there are none
+     */
+    public int points(int balls) {
+        return balls > 0 ? pointsPerLine + pointsPerBall * balls : 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if these rules can't be played on a board of size x size
+     */
+    public void check(int size) {
+        if (lineLength < 2 || lineLength > size)
+            throw new IllegalArgumentException("lineLength: " + lineLength);
+        if (axes <= 0 || axes > ALL_AXES)
+            throw new IllegalArgumentException("axes: " + axes);
+        if (ballsPerTurn < 1 || initialBalls < 0 || initialBalls > size * size)
+            throw new IllegalArgumentException("balls: " + initialBalls + ", " + ballsPerTurn
+                    + " per turn");
+        if (pointsPerLine < 0 || pointsPerBall < 0)
+            throw new IllegalArgumentException("points: " + pointsPerLine + ", " + pointsPerBall
+                    + " per ball");
+    }
+
+    /**
+     * Format: lineLength (byte), axes (byte), flags (byte: 1 wildJokers, 2
+     * cascade), then pointsPerLine, pointsPerBall, ballsPerTurn and
+     * initialBalls (varints)
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(lineLength);
+        out.writeByte(axes);
+        out.writeByte((wildJokers ? FLAG_WILD_JOKERS : 0) | (cascade ? FLAG_CASCADE : 0));
+        Varint.write(out, pointsPerLine);
+        Varint.write(out, pointsPerBall);
+        Varint.write(out, ballsPerTurn);
+        Varint.write(out, initialBalls);
+    }
+
+    /** rules written by write() */
+    public static GameRules read(DataInput in) throws IOException {
+        GameRules rules = new GameRules();
+        rules.readFrom(in);
+        return rules;
+    }
+
+    /** set these rules to the ones written by write(), without creating garbage */
+    public void readFrom(DataInput in) throws IOException {
+        lineLength = in.readUnsignedByte();
+        axes = in.readUnsignedByte();
+        int flags = in.readUnsignedByte();
+        wildJokers = (flags & FLAG_WILD_JOKERS) != 0;
+        cascade = (flags & FLAG_CASCADE) != 0;
+        pointsPerLine = Varint.read(in);
+        pointsPerBall = Varint.read(in);
+        ballsPerTurn = Varint.read(in);
+        initialBalls = Varint.read(in);
+    }
+
+    /** make these rules the same as other */
+    public void set(GameRules other) {
+        lineLength = other.lineLength;
+        axes = other.axes;
+        wildJokers = other.wildJokers;
+        pointsPerLine = other.pointsPerLine;
+        pointsPerBall = other.pointsPerBall;
+        ballsPerTurn = other.ballsPerTurn;
+        initialBalls = other.initialBalls;
+        cascade = other.cascade;
+    }
+
+    public GameRules copy() {
+        GameRules copy = new GameRules();
+        copy.set(this);
+        return copy;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof GameRules))
+            return false;
+        GameRules other = (GameRules) o;
+        return lineLength == other.lineLength && axes == other.axes
+                && wildJokers == other.wildJokers && pointsPerLine == other.pointsPerLine
+                && pointsPerBall == other.pointsPerBall && ballsPerTurn == other.ballsPerTurn
+                && initialBalls == other.initialBalls && cascade == other.cascade;
+    }
+
+    public int hashCode() {
+        int hash = lineLength;
+        hash = hash * 31 + axes;
+        hash = hash * 31 + (wildJokers ? 1 : 0);
+        hash = hash * 31 + pointsPerLine;
+        hash = hash * 31 + pointsPerBall;
+        hash = hash * 31 + ballsPerTurn;
+        hash = hash * 31 + initialBalls;
+        return hash * 31 + (cascade ? 1 : 0);
+    }
+
+    public String toString() {
+        return "{line " + lineLength + ", axes " + axes + (wildJokers ? ", wild Jokers" : "")
+                + ", points " + pointsPerLine + "+" + pointsPerBall + "/ball, balls "
+                + initialBalls + "+" + ballsPerTurn + "/turn" + (cascade ? ", cascade" : "") + "}";
+    }
+}
@@ -0,0 +1,93 @@
+package com.vincewu.wuballs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A game in progress as a small byte array (a couple of hundred bytes on
+ * the 9x9 board), so it can be put in a Bundle or a file and picked up
+ * later exactly where it was left: board, upcoming pieces, random state,
+ * score and selected ball.
+ *
+ * Format: version (byte), size (byte), numGamePieces (byte), flags (byte:
+ * 1 playJoker, 2 SPLITMIX random), jokerFrequency (float), rules
+ * (GameRules.write()), seed (long), score (varint), selected cell + 1
+ * (varint, 0 for none), then GameBoard.writeState().
+ */
+final class GameSnapshot {
+
+    static final int VERSION = 2;
+
+    private static final int FLAG_JOKER = 1;
+    private static final int FLAG_SPLITMIX = 2;
+
+    public final int score;
+    public final int selection; // flat cell index of the selected ball, or -1
+
+    private GameSnapshot(int score, int selection) {
+        this.score = score;
+        this.selection = selection;
+    }
+
+    /**
+     * @param selection
+     *            flat cell index of the selected ball, or -1
+     */
+    public static byte[] save(GameBoard board, int score, int selection) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeByte(board.size);
+            out.writeByte(board.numGamePieces);
+            out.writeByte(flags(board.playJoker, board.getRandomType()));
+            out.writeFloat(board.jokerFrequency);
+            board.getRules().write(out);
+            out.writeLong(board.getSeed());
+            Varint.write(out, score);
+            Varint.write(out, selection + 1);
+            board.writeState(out);
+        } catch (IOException ioex) {
+            throw new IllegalStateException(ioex); // can't happen with a ByteArrayOutputStream
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Put board back in the state saved in snapshot
+     * 
+     * @return score and selection from the snapshot
+     * @throws IOException
+     *             if the snapshot is damaged, or from a board with other
+     *             options (board is unchanged)
+     */
+    public static GameSnapshot restore(byte[] snapshot, GameBoard board) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("unknown snapshot version: " + version);
+        if (in.readUnsignedByte() != board.size || in.readUnsignedByte() != board.numGamePieces
+                || in.readUnsignedByte() != flags(board.playJoker, board.getRandomType())
+                || in.readFloat() != board.jokerFrequency
+                || !board.hasRules(GameRules.read(in)))
+            throw new IOException("snapshot is from a game with other options");
+        long seed = in.readLong();
+        int score = Varint.read(in);
+        int selection = Varint.read(in) - 1;
+        if (selection < -1 || selection >= board.size * board.size)
+            throw new IOException("bad selection: " + selection);
+
+        // checks everything before it changes the board, the selection included
+        board.readState(in, selection);
+        board.setSeed(seed);
+        return new GameSnapshot(score, selection);
+    }
+
+    private static int flags(boolean playJoker, GameBoard.RandomType randomType) {
+        return (playJoker ? FLAG_JOKER : 0)
+                | (randomType == GameBoard.RandomType.SPLITMIX ? FLAG_SPLITMIX : 0);
+    }
+}
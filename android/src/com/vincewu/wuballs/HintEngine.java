@@ -0,0 +1,220 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds a move to suggest to the player: every legal move is scored on
+ * copies of the board, and the best one wins. A move is played a few times,
+ * with the pieces already looked ahead at (the preview) landing on random
+ * cells, and scores the points it makes plus the longest line the next move
+ * could make.
+ *
+ * Moves are scored most promising first, in chunks handed out to the
+ * threads as they go, so every thread keeps busy until the last chunk. Each
+ * thread plays on its own board copy. If the deadline hits first, the best
+ * move scored so far is the hint.
+ *
+ * Scores are kept in a TranspositionTable, by the position, the preview and
+ * the move, so asking again for the same position (after the deadline cut a
+ * hint short, or after an undo) only scores the moves not scored yet.
+ */
+class HintEngine extends ParallelSearch {
+
+    /** A suggested move */
+    public static class Hint {
+        public final int move; // best move (see Move), or Move.NONE if no ball can move
+        public final double score; // expected points of the move, and of the line after it
+        public final int evaluated; // moves scored before the deadline
+        public final int moves; // legal moves
+
+        Hint(int move, double score, int evaluated, int moves) {
+            this.move = move;
+            this.score = score;
+            this.evaluated = evaluated;
+            this.moves = moves;
+        }
+
+        /** whether every legal move was scored in time */
+        public boolean isComplete() {
+            return evaluated == moves;
+        }
+
+        public String toString() {
+            return "{" + Move.start(move) + "->" + Move.end(move) + " score " + score + ", "
+                    + evaluated + " of " + moves + " moves}";
+        }
+    }
+
+    private static final int CHUNK = 8; // moves handed out to a thread at a time
+
+    private int samples = 4; // placements of the preview tried per move
+    private double gameOverPenalty = 100; // cost of filling the board
+    private TranspositionTable table = new TranspositionTable(1 << 12); // scores, or null
+    private int[] rootMoves; // legal moves on the board hinted, sized on first use
+
+    /** hint with 300 ms per hint, see setBudget() */
+    public HintEngine(int threads, long seed) {
+        super(threads, seed, 300000000L);
+    }
+
+    /** placements of the preview tried per move */
+    public void setSamples(int samples) {
+        this.samples = Math.max(1, samples);
+    }
+
+    /**
+     * Keep scores in table, which may be shared with other hint engines for
+     * games with the same options, or null to score every move every time
+     */
+    public void setTable(TranspositionTable table) {
+        this.table = table;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Score the legal moves on board within the time budget, and pick the
+     * best. Does not change board, but board must not change until this
+     * returns: take a copy to keep playing meanwhile.
+     */
+    public Hint hint(GameBoard board) throws InterruptedException {
+        long deadline = deadline();
+        if (rootMoves == null || rootMoves.length < board.maxMoves())
+            rootMoves = new int[board.maxMoves()];
+        int[] moves = rootMoves;
+        int numMoves = board.listMoves(moves);
+        if (numMoves == 0)
+            return new Hint(Move.NONE, 0, 0, 0);
+        order(board, moves, numMoves);
+        double[] values = new double[numMoves];
+        boolean[] evaluated = new boolean[numMoves];
+        long hash = board.getHash(board.getBallsPerTurn());
+        if (table != null) {
+            table.newSearch();
+            for (int m = 0; m < numMoves; m++)
+                evaluated[m] = lookup(hash, moves[m], values, m);
+        }
+        AtomicInteger next = new AtomicInteger();
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++)
+            workers[t] = new Worker(board, hash, moves, numMoves, values, evaluated, next,
+                    deadline, workerSeed(t));
+        runWorkers(workers);
+
+        // best score wins, ties go to the better rated move; with nothing
+        // scored in time, the best rated move is all we have
+        int best = 0, count = 0;
+        for (int m = 0; m < numMoves; m++) {
+            if (!evaluated[m])
+                continue;
+            if (count++ == 0 || values[m] > values[best])
+                best = m;
+        }
+        return new Hint(moves[best], count > 0 ? values[best] : 0, count, numMoves);
+    }
+
+    /** whether the table has a score for move, with as many samples; if so, put it in values[m] */
+    private boolean lookup(long hash, int move, double[] values, int m) {
+        long data = table.probe(SplitMixRandom.seed(hash, move));
+        if (data == TranspositionTable.MISS || TranspositionTable.move(data) != move
+                || TranspositionTable.depth(data) < Math.min(samples, TranspositionTable.MAX_DEPTH))
+            return false;
+        values[m] = TranspositionTable.value(data);
+        return true;
+    }
+
+    /** sort moves by their line rating, best first */
+    private static void order(GameBoard board, int[] moves, int numMoves) {
+        int[] keys = new int[numMoves];
+        board.rateMoves(moves, numMoves, MoveGenerator.LINE, keys);
+        long[] sorted = new long[numMoves];
+        for (int m = 0; m < numMoves; m++)
+            sorted[m] = ((long) -keys[m] << 32) | m; // ascending: best key, then list order
+        Arrays.sort(sorted);
+        int[] copy = Arrays.copyOf(moves, numMoves);
+        for (int m = 0; m < numMoves; m++)
+            moves[m] = copy[(int) sorted[m]];
+    }
+
+    /** Scores chunks of moves on its own board copy until they run out, or time does */
+    private class Worker extends ParallelSearch.Worker {
+        private final long hash; // of the root and the pieces placed next
+        private final TranspositionTable table = HintEngine.this.table; // as the hint started
+        private final int[] candidates; // the legal moves, shared by all workers
+        private final int numCandidates;
+        private final double[] values;
+        private final boolean[] evaluated;
+        private final AtomicInteger next;
+
+        Worker(GameBoard root, long hash, int[] candidates, int numCandidates, double[] values,
+                boolean[] evaluated, AtomicInteger next, long deadline, long seed) {
+            super(root, deadline, seed);
+            this.hash = hash;
+            this.candidates = candidates;
+            this.numCandidates = numCandidates;
+            this.values = values;
+            this.evaluated = evaluated;
+            this.next = next;
+        }
+
+        protected void search(GameBoard board) {
+            int first;
+            while ((first = next.getAndAdd(CHUNK)) < numCandidates) {
+                for (int m = first; m < Math.min(first + CHUNK, numCandidates); m++) {
+                    if (evaluated[m])
+                        continue; // scored in an earlier hint
+                    if (expired())
+                        return;
+                    values[m] = score(board, candidates[m]);
+                    evaluated[m] = true;
+                }
+            }
+        }
+
+        /** evaluate() the move, and keep the score in the table */
+        private double score(GameBoard board, int move) {
+            double value = evaluate(board, move);
+            if (table != null)
+                table.store(SplitMixRandom.seed(hash, move), (float) value, move,
+                        Math.min(samples, TranspositionTable.MAX_DEPTH));
+            return value;
+        }
+
+        /** average of the move's points and the best next line, over placements of the preview */
+        private double evaluate(GameBoard board, int move) {
+            double total = 0;
+            int n;
+            for (n = 0; n < samples; n++) {
+                int checkpoint = board.checkpoint();
+                board.reseed(random.nextLong());
+                try {
+                    total += Simulator.playTurn(board, Move.start(move), Move.end(move), turn)
+                            + nextLine(board);
+                } catch (GameOverException goe) {
+                    total -= gameOverPenalty;
+                } catch (IllegalMoveException imex) {
+                    throw new IllegalStateException("hint tried an illegal move", imex);
+                } finally {
+                    board.rewind(checkpoint);
+                }
+                if (turn.isConnected()) {
+                    n++;
+                    break; // nothing was placed, so every sample would be the same
+                }
+            }
+            return total / n;
+        }
+
+        /** longest line any ball could be part of after one more move */
+        private int nextLine(GameBoard board) {
+            int numMoves = board.listMoves(moves);
+            int best = 0;
+            for (int m = 0; m < numMoves; m++)
+                best = Math.max(best, board.moveLine(moves[m]));
+            return best;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.vincewu.wuballs;
+
+import java.util.Random;
+
+/**
+ * The java.util.Random generator, with its state exposed so a game can be
+ * rewound: same seed, same numbers as Random, so games play out as they
+ * always have for a given seed.
+ */
+class LegacyRandom extends Random implements GameRandom {
+
+    private static final long serialVersionUID = 4468911734172542327L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state; // set by setSeed() from the Random constructor
+
+    public LegacyRandom(long seed) {
+        super(seed);
+    }
+
+    public void setSeed(long seed) {
+        super.setSeed(seed);
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+}
@@ -0,0 +1,273 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+
+/**
+ * Incrementally maintained run lengths for connect-5 detection.
+ *
+ * For every cell, direction and ball type we keep the number of consecutive
+ * balls, starting next to the cell, that match that type (a Joker matches
+ * any type). A separate run counts Jokers only. When a cell changes, only
+ * the runs pointing at it are updated, so finding the lines through a ball
+ * is a constant-time lookup.
+ *
+ * Each cell also keeps a bit set of the types it counts towards, so the
+ * scanner tests a match with a single AND, Jokers included.
+ *
+ * The line rules (length, axes, Joker behavior) are fixed when the index is
+ * created, so a variant costs no more to check than the standard game.
+ *
+ * Not thread safe: use one LineIndex per board.
+ */
+class LineIndex {
+
+    /** row step of the 8 directions; direction d + 4 is opposite to d */
+    static final int[] DI = { 1, 0, 1, 1, -1, 0, -1, -1 };
+    /** column step of the 8 directions; direction d + 4 is opposite to d */
+    static final int[] DJ = { 0, 1, 1, -1, 0, -1, -1, 1 };
+
+    private static final int EMPTY = -1;
+
+    private final BoardGeometry geometry;
+    private final int cells;
+    private final int joker; // piece code for Jokers, also the index of the Joker-only runs
+    private final int minNeighbors; // balls besides the reference ball that make a line
+    private final int[] axes; // directions 0..3 that lines can lie along
+    private final boolean wild; // whether Jokers count towards runs of every type
+    private final byte[] pieces; // what the index last saw at each cell
+    private final long[] matches; // bit set of the types each cell counts towards
+    private final byte[] runs; // [(type * 8 + direction) * cells + cell]
+
+    /**
+     * @param numTypes
+     *            number of ball types, not including Joker
+     */
+    public LineIndex(int size, int numTypes, GameRules rules) {
+        this.geometry = BoardGeometry.of(size);
+        this.cells = size * size;
+        this.joker = numTypes;
+        this.minNeighbors = rules.lineLength - 1;
+        this.axes = new int[Integer.bitCount(rules.axes)];
+        for (int d = 0, n = 0; d < 4; d++) {
+            if ((rules.axes & (1 << d)) != 0)
+                axes[n++] = d;
+        }
+        this.wild = rules.wildJokers;
+        this.pieces = new byte[cells];
+        this.matches = new long[cells];
+        this.runs = new byte[(numTypes + 1) * 8 * cells];
+        Arrays.fill(pieces, (byte) EMPTY);
+    }
+
+    /**
+     * Bring the index up to date after cell changed on board (a ball was
+     * placed, moved or removed)
+     */
+    public void update(BoardEngine board, int cell) {
+        int before = pieces[cell];
+        int code = board.getPiece(cell);
+        int after = code == Piece.EMPTY ? EMPTY : Piece.isJoker(code) ? joker : Piece.color(code);
+        if (before == after)
+            return;
+        pieces[cell] = (byte) after;
+        matches[cell] = after == EMPTY ? 0 : after == joker && wild ? -1L : 1L << after;
+
+        // a cell only counts towards the runs of its own type, unless it's a wild Joker
+        if (wild && (before == joker || after == joker)) {
+            for (int type = 0; type <= joker; type++)
+                rescan(type, cell);
+        } else {
+            if (before != EMPTY)
+                rescan(before, cell);
+            if (after != EMPTY)
+                rescan(after, cell);
+        }
+    }
+
+    /** back to an empty board */
+    public void clear() {
+        Arrays.fill(pieces, (byte) EMPTY);
+        Arrays.fill(matches, 0);
+        Arrays.fill(runs, (byte) 0);
+    }
+
+    /** make this index a copy of other, which must have the same size, types and rules */
+    public void copyFrom(LineIndex other) {
+        System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+        System.arraycopy(other.matches, 0, matches, 0, matches.length);
+        System.arraycopy(other.runs, 0, runs, 0, runs.length);
+    }
+
+    /**
+     * @return number of consecutive balls matching type, starting next to
+     *         cell in direction d
+     */
+    public int run(int type, int d, int cell) {
+        return runs[(type * 8 + d) * cells + cell];
+    }
+
+    /**
+     * Find all lines through the ball at cell, along the axes of the rules.
+     *
+     * Without wild Jokers, Jokers only match one another. Otherwise a Joker
+     * ball matches any ball, but all the other non-Joker balls must match one
+     * another to be a valid connect-5. If the reference ball is a
+     * Joker, the first non-Joker ball on either side of it is what all others
+     * have to match. It's possible to have no specific matching piece (5 or
+     * more Jokers in a row), or to have 2 matches along the same axis (e.g.
+     * XXJJJYY, Joker pieces flanked by different consecutive pieces on either
+     * side, each utilizing the Jokers to connect-5).
+     *
+     * @param lines
+     *            receives 3 ints per line: the direction d, the number of
+     *            balls in direction d + 4, and the number of balls in
+     *            direction d. Must hold 24 ints.
+     * @return number of lines found
+     */
+    public int findLines(int cell, int[] lines) {
+        int piece = pieces[cell];
+        if (piece == EMPTY)
+            return 0;
+
+        int count = 0;
+        for (int a = 0; a < axes.length; a++) {
+            int d = axes[a], od = d + 4;
+            if (piece != joker || !wild) {
+                count = addLine(lines, count, d, run(piece, od, cell), run(piece, d, cell));
+                continue;
+            }
+
+            // the first non-Joker ball on each side decides what has to match
+            int jf = run(joker, d, cell), jb = run(joker, od, cell);
+            int x = pieceAt(cell, d, jf + 1), y = pieceAt(cell, od, jb + 1);
+            if (x == EMPTY && y == EMPTY)
+                count = addLine(lines, count, d, jb, jf);
+            else if (x == EMPTY)
+                count = addLine(lines, count, d, run(y, od, cell), jf);
+            else if (y == EMPTY)
+                count = addLine(lines, count, d, jb, run(x, d, cell));
+            else if (x == y)
+                count = addLine(lines, count, d, run(x, od, cell), run(x, d, cell));
+            else {
+                // XXJJJYY: the Jokers may complete a line on both sides
+                count = addLine(lines, count, d, jb, run(x, d, cell));
+                count = addLine(lines, count, d, run(y, od, cell), jf);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Length of the longest line, the cell included, that piece would be
+     * part of at cell. For a Joker, the best type on each axis counts (the
+     * XXJJJYY case counts as its longer side).
+     */
+    public int potential(int cell, int piece) {
+        return potential(cell, piece, -1);
+    }
+
+    /**
+     * potential(cell, piece) as if the ball at except weren't there: what
+     * the ball moving from except to cell would make. A ball sliding along
+     * its own line doesn't count itself. No exception if except is -1.
+     */
+    public int potential(int cell, int piece, int except) {
+        int best = 0;
+        for (int a = 0; a < axes.length; a++) {
+            int d = axes[a];
+            int forward = distance(cell, except, d), back = distance(cell, except, d + 4);
+            if (piece != joker || !wild) {
+                best = Math.max(best, run(piece, d, cell, forward)
+                        + run(piece, d + 4, cell, back));
+                continue;
+            }
+            for (int type = 0; type < joker; type++)
+                best = Math.max(best, run(type, d, cell, forward) + run(type, d + 4, cell, back));
+        }
+        return best + 1;
+    }
+
+    /** run(type, d, cell), cut short before the cell gap steps away, unless gap is 0 */
+    private int run(int type, int d, int cell, int gap) {
+        int run = run(type, d, cell);
+        return gap > 0 && run >= gap ? gap - 1 : run;
+    }
+
+    /** how many steps in direction d take cell to other, or 0 if none do (or other is -1) */
+    private int distance(int cell, int other, int d) {
+        if (other < 0)
+            return 0;
+        int di = other / geometry.size - cell / geometry.size;
+        int dj = other % geometry.size - cell % geometry.size;
+        int n = Math.max(Math.abs(di), Math.abs(dj));
+        return n > 0 && di == n * DI[d] && dj == n * DJ[d] ? n : 0;
+    }
+
+    /**
+     * Length of the longest line of another type that piece would cut at
+     * cell: the runs of that type on both sides, added up per axis. Wild
+     * Jokers cut no lines.
+     */
+    public int blocking(int cell, int piece) {
+        if (piece == joker && wild)
+            return 0;
+        int types = wild ? joker : joker + 1; // Joker-only runs are a type without wild Jokers
+        int best = 0;
+        for (int a = 0; a < axes.length; a++) {
+            int d = axes[a];
+            for (int type = 0; type < types; type++) {
+                if (type != piece)
+                    best = Math.max(best, run(type, d, cell) + run(type, d + 4, cell));
+            }
+        }
+        return best;
+    }
+
+    /** what the index holds at cell: ball type, the Joker index (numTypes), or -1 if empty */
+    public int piece(int cell) {
+        return pieces[cell];
+    }
+
+    private int addLine(int[] lines, int count, int d, int back, int forward) {
+        if (back + forward < minNeighbors)
+            return count;
+        lines[count * 3] = d;
+        lines[count * 3 + 1] = back;
+        lines[count * 3 + 2] = forward;
+        return count + 1;
+    }
+
+    /** piece found distance cells away from cell in direction d (EMPTY if off the board) */
+    private int pieceAt(int cell, int d, int distance) {
+        if (distance > geometry.ray(cell, d))
+            return EMPTY;
+        return pieces[cell + distance * geometry.step(d)];
+    }
+
+    /** whether the piece at cell counts towards runs of type */
+    private boolean matches(int type, int cell) {
+        return (matches[cell] & (1L << type)) != 0;
+    }
+
+    /**
+     * Recompute the runs of type that pass through cell: walking away from
+     * cell, each run is one longer than the last, up to the first cell that
+     * doesn't match.
+     */
+    private void rescan(int type, int cell) {
+        for (int d = 0; d < 8; d++) {
+            int base = (type * 8 + d) * cells;
+            int length = matches(type, cell) ? 1 + runs[base + cell] : 0;
+            int od = (d + 4) & 7;
+            int step = geometry.step(od);
+            int p = cell;
+            for (int n = geometry.ray(cell, od); n > 0; n--) {
+                p += step;
+                runs[base + p] = (byte) length;
+                if (!matches(type, p))
+                    break;
+                length++;
+            }
+        }
+    }
+}
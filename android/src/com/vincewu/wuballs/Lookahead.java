@@ -0,0 +1,17 @@
+package com.vincewu.wuballs;
+
+/**
+ * Read-only view of the upcoming game pieces, next one first. Reads straight
+ * from the board's queue, so nothing is copied.
+ */
+interface Lookahead {
+
+    /** number of pieces that can be read */
+    public int size();
+
+    /** whether the piece offset places ahead is a Joker piece */
+    public boolean isJoker(int offset);
+
+    /** type of the piece offset places ahead (undefined for Jokers) */
+    public int getType(int offset);
+}
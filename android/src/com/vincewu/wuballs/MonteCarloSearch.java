@@ -0,0 +1,241 @@
+package com.vincewu.wuballs;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks moves by Monte Carlo search. Every candidate move is played out on a
+ * copy of the board: the copy knows the pieces shown in the preview, but the
+ * pieces after that and where new balls land are random, so averaging many
+ * playouts estimates the expected value of the move over the random
+ * placements. Playouts are shared between candidates with UCB1, so
+ * promising moves get most of the time budget.
+ *
+ * The preview is whatever the caller has looked ahead at, like the three
+ * pieces the game shows the player. The Simulator looks at nothing, so there
+ * every piece of a playout is random. The search never looks ahead itself,
+ * which would show it pieces the player hasn't seen.
+ *
+ * With more than one thread, each thread searches on its own board copies
+ * and the statistics are merged when time is up.
+ *
+ * Also a MovePolicy, so the Simulator can play whole games with it.
+ */
+class MonteCarloSearch extends ParallelSearch implements MovePolicy {
+
+    /** Outcome of a search */
+    public static class Result {
+        public final int move; // best move (see Move), or Move.NONE if no ball can move
+        public final double score; // expected points of the best move, over the playout depth
+        public final long playouts; // number of playouts run
+
+        Result(int move, double score, long playouts) {
+            this.move = move;
+            this.score = score;
+            this.playouts = playouts;
+        }
+
+        public String toString() {
+            return "{" + Move.start(move) + "->" + Move.end(move) + " score " + score + ", "
+                    + playouts + " playouts}";
+        }
+    }
+
+    private int depth = 3; // turns per playout, the candidate move included
+    private int maxCandidates = 24; // moves to search, best by quick rating
+    private int ordering = MoveGenerator.LINE; // how moves are rated to pick the candidates
+    private double exploration = 10; // UCB1 constant, in points
+    private double freeCellValue = 0.5; // value of an empty cell at the end of a playout
+    private double gameOverPenalty = 100; // cost of filling the board
+    private int[] rootMoves; // legal moves on the board searched, sized on first use
+    private final AtomicInteger copies = new AtomicInteger(); // copies made, to vary their seeds
+
+    /** search with 50 ms per move, see setBudget() */
+    public MonteCarloSearch(int threads, long seed) {
+        super(threads, seed, 50000000L);
+    }
+
+    /** turns per playout, the candidate move included */
+    public void setDepth(int depth) {
+        this.depth = Math.max(1, depth);
+    }
+
+    /** number of moves to search, picked by a quick rating of all legal moves */
+    public void setMaxCandidates(int maxCandidates) {
+        this.maxCandidates = Math.max(1, maxCandidates);
+    }
+
+    /** how to rate moves to pick the candidates: MoveGenerator.LINE, MOBILITY and/or BLOCKING */
+    public void setOrdering(int ordering) {
+        this.ordering = ordering;
+    }
+
+    /**
+     * Search for the best move on board, within the time budget, knowing the
+     * upcoming pieces board has looked ahead at and no others. Does not
+     * change board.
+     */
+    public Result search(GameBoard board) throws InterruptedException {
+        long deadline = deadline();
+        int[] candidates = candidates(board);
+        if (candidates.length == 0)
+            return new Result(Move.NONE, 0, 0);
+
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++)
+            workers[t] = new Worker(board, candidates, deadline, workerSeed(t));
+        runWorkers(workers);
+
+        // merge the statistics of all workers
+        double[] total = new double[candidates.length];
+        long[] visits = new long[candidates.length];
+        long playouts = 0;
+        for (int t = 0; t < threads; t++) {
+            for (int c = 0; c < candidates.length; c++) {
+                total[c] += workers[t].total[c];
+                visits[c] += workers[t].visits[c];
+            }
+            playouts += workers[t].playouts;
+        }
+
+        // most visited is the most reliable pick; ties go to the better mean
+        int best = 0;
+        for (int c = 1; c < candidates.length; c++) {
+            if (visits[c] > visits[best]
+                    || (visits[c] == visits[best] && visits[c] > 0
+                            && total[c] / visits[c] > total[best] / visits[best]))
+                best = c;
+        }
+        double score = visits[best] > 0 ? total[best] / visits[best] : 0;
+        return new Result(candidates[best], score, playouts);
+    }
+
+    public int chooseMove(GameBoard board, Random random) {
+        try {
+            return search(board).move;
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+            return Move.NONE;
+        }
+    }
+
+    /** a search with the same settings, and a seed of its own */
+    public MovePolicy copy() {
+        MonteCarloSearch copy = new MonteCarloSearch(threads, SplitMixRandom.seed(seed,
+                copies.incrementAndGet()));
+        copy.setBudgetNanos(getBudgetNanos());
+        copy.depth = depth;
+        copy.maxCandidates = maxCandidates;
+        copy.ordering = ordering;
+        copy.exploration = exploration;
+        copy.freeCellValue = freeCellValue;
+        copy.gameOverPenalty = gameOverPenalty;
+        return copy;
+    }
+
+    /** shutdown() */
+    public void close() {
+        shutdown();
+    }
+
+    /**
+     * All legal moves on board, rated by the move ordering, keeping the best
+     * maxCandidates
+     */
+    private int[] candidates(GameBoard board) {
+        if (rootMoves == null || rootMoves.length < board.maxMoves())
+            rootMoves = new int[board.maxMoves()];
+        int[] moves = rootMoves;
+        int numMoves = board.listMoves(moves);
+        int keep = Math.min(numMoves, maxCandidates);
+        int[] keys = new int[numMoves];
+        board.rateMoves(moves, numMoves, ordering, keys);
+        MoveGenerator.selectBest(moves, keys, numMoves, keep);
+        int[] result = new int[keep];
+        System.arraycopy(moves, 0, result, 0, keep);
+        return result;
+    }
+
+    /** Runs playouts on its own board copy until the deadline */
+    private class Worker extends ParallelSearch.Worker {
+        private final int[] candidates;
+        private final double[] total;
+        private final long[] visits;
+        private long playouts;
+
+        Worker(GameBoard root, int[] candidates, long deadline, long seed) {
+            super(root, deadline, seed);
+            this.candidates = candidates;
+            this.total = new double[candidates.length];
+            this.visits = new long[candidates.length];
+        }
+
+        protected void search(GameBoard board) {
+            // first round: every candidate once, even if time is short
+            do {
+                int c = pick();
+                int checkpoint = board.checkpoint();
+                board.reseed(random.nextLong());
+                double value = playout(board, candidates[c]);
+                board.rewind(checkpoint);
+                total[c] += value;
+                visits[c]++;
+                playouts++;
+            } while (!expired() || playouts < candidates.length);
+        }
+
+        /** UCB1: best mean plus a bonus for rarely tried candidates */
+        private int pick() {
+            if (playouts < candidates.length)
+                return (int) playouts;
+            double logN = Math.log(playouts);
+            int best = 0;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int c = 0; c < candidates.length; c++) {
+                double value = total[c] / visits[c] + exploration
+                        * Math.sqrt(logN / visits[c]);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /** play move and then depth - 1 quick turns, and value the outcome */
+        private double playout(GameBoard board, int move) {
+            double points = 0;
+            try {
+                points += Simulator.playTurn(board, Move.start(move), Move.end(move), turn);
+                for (int t = 1; t < depth; t++) {
+                    int next = quickMove(board);
+                    if (next == Move.NONE)
+                        return points - gameOverPenalty;
+                    points += Simulator.playTurn(board, Move.start(next), Move.end(next), turn);
+                }
+            } catch (GameOverException goe) {
+                return points - gameOverPenalty;
+            } catch (IllegalMoveException imex) {
+                throw new IllegalStateException("playout played an illegal move", imex);
+            }
+            return points + freeCellValue * board.getNumFreeSlots();
+        }
+
+        /** a few random moves, taking the one that makes the longest line */
+        private int quickMove(GameBoard board) {
+            int numMoves = board.listMoves(moves);
+            if (numMoves == 0)
+                return Move.NONE;
+            int best = Move.NONE, bestRating = -1;
+            for (int x = 0; x < 8; x++) {
+                int move = moves[random.nextInt(numMoves)];
+                int rating = board.moveLine(move);
+                if (rating > bestRating) {
+                    bestRating = rating;
+                    best = move;
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.vincewu.wuballs;
+
+/**
+ * A move (start cell, end cell) packed into a single int, so lists of moves
+ * can live in plain int[] buffers.
+ */
+final class Move {
+
+    /** no move */
+    public static final int NONE = -1;
+
+    private Move() {
+    }
+
+    public static int pack(int start, int end) {
+        return (start << 16) | end;
+    }
+
+    /** flat index of the cell the ball moves from */
+    public static int start(int move) {
+        return move >>> 16;
+    }
+
+    /** flat index of the cell the ball moves to */
+    public static int end(int move) {
+        return move & 0xFFFF;
+    }
+}
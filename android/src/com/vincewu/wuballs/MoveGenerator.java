@@ -0,0 +1,153 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+
+/**
+ * Lists every legal move on a board into an int[] of packed moves (see
+ * Move), and rates them for move ordering. The empty space is labeled in a
+ * single pass and its cells grouped by region, so a ball's moves are just
+ * the cells of the regions next to it, copied out in a tight loop. All
+ * working storage is allocated once up front and reused.
+ *
+ * Not thread safe: use one MoveGenerator per board.
+ */
+class MoveGenerator {
+
+    /** ordering key: how much longer the ball's best line gets */
+    public static final int LINE = 1;
+    /** ordering key: how many more pairs of neighboring empty cells there are */
+    public static final int MOBILITY = 2;
+    /** ordering key: how long a line of another type the ball would cut, as a penalty */
+    public static final int BLOCKING = 4;
+
+    private final BoardGeometry geometry;
+    private final int[] labels; // region of each empty cell, 0 for balls
+    private final int[] regionCells; // the empty cells, grouped by region, ascending
+    private final int[] regionStart; // [r]: first index of region r in regionCells; [r + 1]: end
+
+    public MoveGenerator(int size) {
+        this.geometry = BoardGeometry.of(size);
+        this.labels = new int[size * size];
+        this.regionCells = new int[size * size];
+        this.regionStart = new int[size * size + 2];
+    }
+
+    /**
+     * Most moves there can be on a board of cells cells: every ball to every
+     * empty cell, at most (cells / 2)^2
+     */
+    static int maxMoves(int cells) {
+        return (cells / 2) * (cells - cells / 2);
+    }
+
+    /**
+     * List every legal move on board, ball by ball, in order of start cell.
+     * A ball can move to every cell of the empty regions next to it.
+     *
+     * @param moves
+     *            receives the moves, must hold maxMoves(size*size) ints
+     * @return number of moves written to moves
+     */
+    public int generate(BoardEngine board, PathFinder finder, int[] moves) {
+        int regions = finder.labelRegions(board, labels);
+
+        // counting sort of the empty cells by region
+        Arrays.fill(regionStart, 0, regions + 2, 0);
+        for (int cell = 0; cell < geometry.cells; cell++)
+            regionStart[labels[cell] + 1]++;
+        regionStart[1] = 0; // balls, labeled 0, aren't listed
+        for (int r = 2; r <= regions + 1; r++)
+            regionStart[r] += regionStart[r - 1];
+        for (int cell = 0; cell < geometry.cells; cell++) {
+            if (labels[cell] != 0)
+                regionCells[regionStart[labels[cell]]++] = cell;
+        }
+        for (int r = regions; r > 0; r--) // each start was moved on to the next region's
+            regionStart[r] = regionStart[r - 1];
+
+        int count = 0;
+        for (int start = 0; start < geometry.cells; start++) {
+            if (board.isEmpty(start))
+                continue;
+            // off the edge the neighbor is start itself, a ball: label 0
+            int up = labels[geometry.neighbor(start, BoardGeometry.UP)];
+            int right = labels[geometry.neighbor(start, BoardGeometry.RIGHT)];
+            int down = labels[geometry.neighbor(start, BoardGeometry.DOWN)];
+            int left = labels[geometry.neighbor(start, BoardGeometry.LEFT)];
+            count = addRegion(moves, count, start, up);
+            if (right != up)
+                count = addRegion(moves, count, start, right);
+            if (down != up && down != right)
+                count = addRegion(moves, count, start, down);
+            if (left != up && left != right && left != down)
+                count = addRegion(moves, count, start, left);
+        }
+        return count;
+    }
+
+    /**
+     * Rate moves for move ordering, higher is better. The keys asked for are
+     * compared in turn: the line first, then mobility, then blocking. All of
+     * them are lookups around the start and end cells.
+     *
+     * @param ordering
+     *            LINE, MOBILITY and/or BLOCKING
+     * @param keys
+     *            receives the rating of each move
+     */
+    public void rate(BoardEngine board, LineIndex index, int[] moves, int numMoves,
+            int ordering, int[] keys) {
+        for (int m = 0; m < numMoves; m++) {
+            int start = Move.start(moves[m]), end = Move.end(moves[m]);
+            int piece = index.piece(start);
+            int key = 0;
+            if ((ordering & LINE) != 0)
+                key += (index.potential(end, piece, start) - index.potential(start, piece)) << 12;
+            if ((ordering & MOBILITY) != 0)
+                key += (emptyNeighbors(board, start, end)
+                        - emptyNeighbors(board, end, start)) << 8;
+            if ((ordering & BLOCKING) != 0)
+                key -= index.blocking(end, piece);
+            keys[m] = key;
+        }
+    }
+
+    /**
+     * Move the keep best rated moves to the front of moves, best first. The
+     * rest are left in any order behind them.
+     */
+    static void selectBest(int[] moves, int[] keys, int numMoves, int keep) {
+        // partial selection sort: only the first keep moves need ordering
+        for (int x = 0; x < keep; x++) {
+            int best = x;
+            for (int y = x + 1; y < numMoves; y++) {
+                if (keys[y] > keys[best])
+                    best = y;
+            }
+            int tmp = moves[x]; moves[x] = moves[best]; moves[best] = tmp;
+            tmp = keys[x]; keys[x] = keys[best]; keys[best] = tmp;
+        }
+    }
+
+    /** add a move from start to every cell of region, if it's a region */
+    private int addRegion(int[] moves, int count, int start, int region) {
+        if (region == 0)
+            return count;
+        for (int k = regionStart[region]; k < regionStart[region + 1]; k++)
+            moves[count++] = Move.pack(start, regionCells[k]);
+        return count;
+    }
+
+    /** empty cells next to cell, not counting except */
+    private int emptyNeighbors(BoardEngine board, int cell, int except) {
+        return isOpen(board, cell, geometry.neighbor(cell, BoardGeometry.UP), except)
+                + isOpen(board, cell, geometry.neighbor(cell, BoardGeometry.RIGHT), except)
+                + isOpen(board, cell, geometry.neighbor(cell, BoardGeometry.DOWN), except)
+                + isOpen(board, cell, geometry.neighbor(cell, BoardGeometry.LEFT), except);
+    }
+
+    /** 1 if neighbor is an empty cell other than cell (at the edge) and except, else 0 */
+    private static int isOpen(BoardEngine board, int cell, int neighbor, int except) {
+        return neighbor != cell && neighbor != except && board.isEmpty(neighbor) ? 1 : 0;
+    }
+}
@@ -0,0 +1,31 @@
+package com.vincewu.wuballs;
+
+import java.util.Random;
+
+/**
+ * Decides which move to play next. Used by Simulator to play games without
+ * a user.
+ */
+interface MovePolicy {
+
+    /**
+     * Pick the next move on board. Must not change the board.
+     * 
+     * @param random
+     *            source of randomness for this game, so games replay the same
+     *            for the same seed
+     * @return the move (see Move), or Move.NONE if no ball can move
+     */
+    public int chooseMove(GameBoard board, Random random);
+
+    /**
+     * @return a new policy of the same kind, for use on another thread
+     */
+    public MovePolicy copy();
+
+    /**
+     * Release what the policy holds, such as threads. The policy is not
+     * used after this.
+     */
+    public void close();
+}
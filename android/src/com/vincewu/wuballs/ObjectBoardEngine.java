@@ -0,0 +1,70 @@
+package com.vincewu.wuballs;
+
+/**
+ * The original board representation: one Wuball object per occupied cell.
+ * Every ball put on the board is a new object; BitBoardEngine stores piece
+ * codes instead.
+ */
+class ObjectBoardEngine implements BoardEngine {
+
+    private final int size;
+    private final Wuball[] board;
+
+    public ObjectBoardEngine(int size) {
+        this.size = size;
+        this.board = new Wuball[size * size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getPiece(int cell) {
+        return board[cell] == null ? Piece.EMPTY : board[cell].toPiece();
+    }
+
+    public boolean isEmpty(int cell) {
+        return board[cell] == null;
+    }
+
+    public boolean isJoker(int cell) {
+        return board[cell] != null && board[cell].isJokerBall();
+    }
+
+    public int getType(int cell) {
+        return Piece.color(getPiece(cell));
+    }
+
+    public boolean hasMoved(int cell) {
+        return board[cell] != null && board[cell].hasMoved();
+    }
+
+    public Wuball getWuball(int cell) {
+        return board[cell];
+    }
+
+    public void put(int cell, int piece) {
+        board[cell] = Wuball.fromPiece(piece);
+    }
+
+    public void move(int start, int end) {
+        board[end] = board[start];
+        board[end].setMoved();
+        board[start] = null;
+    }
+
+    public void clear(int cell) {
+        board[cell] = null;
+    }
+
+    public void copyFrom(BoardEngine other) {
+        // balls are mutable (setMoved), so each board needs its own
+        for (int cell = 0; cell < board.length; cell++) {
+            if (other.isEmpty(cell)) {
+                board[cell] = null;
+                continue;
+            }
+            put(cell, other.getPiece(cell));
+        }
+    }
+}
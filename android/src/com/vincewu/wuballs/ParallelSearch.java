@@ -0,0 +1,174 @@
+package com.vincewu.wuballs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * What the searches that fan out over threads (MonteCarloSearch,
+ * HintEngine) have in common: the time budget, a fixed thread pool kept
+ * from one search to the next, and workers that each search on a board of
+ * their own until the deadline. The workers' boards and scratch buffers are
+ * kept from one search to the next too, so a search runs one at a time.
+ */
+abstract class ParallelSearch {
+
+    protected final int threads;
+    protected final long seed;
+    private long budgetNanos; // time allowed per search
+    private ExecutorService executor; // created on first use, with threads > 1; guarded by this
+    private boolean shutdown; // whether shutdown() was called; guarded by this
+    private int searches; // number of searches run, to vary the seeds
+    private Slot[] slots; // board and scratch of each worker, see Slot
+
+    protected ParallelSearch(int threads, long seed, long budgetNanos) {
+        this.threads = Math.max(1, threads);
+        this.seed = seed;
+        this.budgetNanos = budgetNanos;
+    }
+
+    /** time allowed per search */
+    public void setBudget(long millis) {
+        this.budgetNanos = millis * 1000000L;
+    }
+
+    public void setBudgetNanos(long nanos) {
+        this.budgetNanos = nanos;
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    /**
+     * Stop the worker threads. Searches started after this throw
+     * RejectedExecutionException; one already running finishes first.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    /** the board of worker t as the last search left it, or null before any; for checks */
+    GameBoard workerBoard(int t) {
+        return slots == null ? null : slots[t].board;
+    }
+
+    /** deadline of a search starting now, for System.nanoTime() */
+    protected long deadline() {
+        return System.nanoTime() + budgetNanos;
+    }
+
+    /** seed for worker t of the next search */
+    protected long workerSeed(int t) {
+        return Simulator.gameSeed(seed, searches * threads + t);
+    }
+
+    /**
+     * Run one worker per thread, and wait until they have all returned.
+     * With one thread, the worker runs on the caller's thread.
+     */
+    protected void runWorkers(Worker[] workers) throws InterruptedException {
+        ExecutorService executor = executor();
+        searches++;
+        if (slots == null) {
+            slots = new Slot[threads];
+            for (int t = 0; t < threads; t++)
+                slots[t] = new Slot();
+        }
+        for (int t = 0; t < threads; t++)
+            workers[t].slot = slots[t];
+        if (threads == 1) {
+            workers[0].run();
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+        for (int t = 0; t < threads; t++)
+            futures.add(executor.submit(workers[t]));
+        try {
+            for (Future<?> future : futures)
+                future.get(); // workers stop by themselves at the deadline
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("search failed", ex.getCause());
+        }
+    }
+
+    /**
+     * the thread pool, created on first use, or null with one thread
+     * 
+     * @throws RejectedExecutionException
+     *             after shutdown()
+     */
+    private synchronized ExecutorService executor() {
+        if (shutdown)
+            throw new RejectedExecutionException("search was shut down");
+        if (executor == null && threads > 1)
+            executor = Executors.newFixedThreadPool(threads);
+        return executor;
+    }
+
+    /**
+     * The board copy and scratch buffers of the t-th worker of every search.
+     * The board is made again only when the options of the game change.
+     */
+    private static class Slot {
+        GameBoard board;
+        TurnResult turn;
+        int[] moves;
+
+        /** make board a bitboard copy of root, whatever the engine of the real game */
+        void copy(GameBoard root) {
+            if (board == null || !board.canCopy(root)
+                    || board.getRandomType() != root.getRandomType()) {
+                GameOptions options = root.getOptions();
+                options.engineType = GameBoard.EngineType.BITBOARD;
+                board = new GameBoard(options, 0);
+                turn = new TurnResult(board.size);
+                moves = new int[board.maxMoves()];
+            }
+            board.copyFrom(root, 0);
+        }
+    }
+
+    /**
+     * Searches on its own copy of the board until it's done, or the deadline
+     * hits. The copy is a bitboard, whatever the engine of the real game,
+     * and is rewound after every try instead of copied again.
+     */
+    protected abstract static class Worker implements Runnable {
+        private final GameBoard root;
+        protected final long deadline;
+        protected final Random random;
+        private Slot slot; // set by runWorkers()
+
+        protected TurnResult turn; // scratch for playTurn
+        protected int[] moves; // scratch for listMoves
+
+        protected Worker(GameBoard root, long deadline, long seed) {
+            this.root = root;
+            this.deadline = deadline;
+            this.random = new Random(seed);
+        }
+
+        public final void run() {
+            slot.copy(root);
+            turn = slot.turn;
+            moves = slot.moves;
+            search(slot.board);
+        }
+
+        /** search on board, this worker's copy of the root */
+        protected abstract void search(GameBoard board);
+
+        /** whether the deadline has passed */
+        protected boolean expired() {
+            return System.nanoTime() >= deadline;
+        }
+    }
+}
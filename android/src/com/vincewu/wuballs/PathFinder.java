@@ -0,0 +1,165 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+
+/**
+ * Breadth-first route search and flood fills over the empty cells of a
+ * board. All working storage is allocated once up front and reused, so a
+ * search makes no allocations at all.
+ *
+ * Not thread safe: use one PathFinder per board.
+ */
+class PathFinder {
+
+    private final BoardGeometry geometry;
+    private final int[] queue; // cells to visit; every cell is queued at most once
+    private final int[] distance; // hops from start + 1, valid where visited == stamp
+    private final int[] visited; // stamp of the search that last reached the cell
+    private int stamp; // bumped per search, so we never have to clear the arrays
+    private int head, tail; // queue bounds
+
+    public PathFinder(int size) {
+        this.geometry = BoardGeometry.of(size);
+        this.queue = new int[size * size];
+        this.distance = new int[size * size];
+        this.visited = new int[size * size];
+    }
+
+    /**
+     * Find the shortest route for the ball at start to the empty cell end.
+     * Neighbors are tried in the order top, right, bottom, left.
+     *
+     * @param board
+     *            board to search
+     * @param start
+     *            cell of the ball to move
+     * @param end
+     *            empty destination cell
+     * @param path
+     *            receives the route, start and end included. Must hold
+     *            size*size cells.
+     * @return number of cells written to path, or 0 if there is no route
+     */
+    public int findPath(BoardEngine board, int start, int end, int[] path) {
+        if (!search(board, start, end))
+            return 0;
+
+        // walk back from end, always stepping to a cell one hop closer
+        int length = distance[end];
+        int cell = end;
+        path[length - 1] = end;
+        for (int d = length - 1; d > 0; d--) {
+            // a cell is never at distance d from itself, so edges need no tests
+            int up = geometry.neighbor(cell, BoardGeometry.UP);
+            int right = geometry.neighbor(cell, BoardGeometry.RIGHT);
+            int down = geometry.neighbor(cell, BoardGeometry.DOWN);
+            if (isAt(up, d))
+                cell = up;
+            else if (isAt(right, d))
+                cell = right;
+            else if (isAt(down, d))
+                cell = down;
+            else
+                cell = geometry.neighbor(cell, BoardGeometry.LEFT);
+            path[d - 1] = cell;
+        }
+        return length;
+    }
+
+    /**
+     * @return whether there is a route for the ball at start to the empty
+     *         cell end
+     */
+    public boolean hasPath(BoardEngine board, int start, int end) {
+        return search(board, start, end);
+    }
+
+    /**
+     * Flood fill the empty space around the ball at start.
+     * 
+     * @param mask
+     *            receives every empty cell the ball at start can be moved
+     *            to. Must hold CellMask.words(size*size) longs.
+     * @return number of cells in mask
+     */
+    public int reachable(BoardEngine board, int start, long[] mask) {
+        CellMask.clear(mask);
+        search(board, start, -1);
+        for (int x = 1; x < tail; x++) // queue[0] is start itself
+            CellMask.add(mask, queue[x]);
+        return tail - 1;
+    }
+
+    /**
+     * Label the connected regions of empty space. A ball can move to every
+     * cell of the regions next to it, so this gives all legal moves of all
+     * balls in one pass over the board.
+     * 
+     * @param labels
+     *            receives the region (1, 2, ...) of each empty cell, and 0
+     *            for cells holding a ball. Must hold size*size ints.
+     * @return number of regions
+     */
+    public int labelRegions(BoardEngine board, int[] labels) {
+        int regions = 0;
+        for (int cell = 0; cell < labels.length; cell++)
+            labels[cell] = 0;
+        for (int cell = 0; cell < labels.length; cell++) {
+            if (labels[cell] == 0 && board.isEmpty(cell)) {
+                regions++;
+                search(board, cell, -1);
+                for (int x = 0; x < tail; x++)
+                    labels[queue[x]] = regions;
+            }
+        }
+        return regions;
+    }
+
+    /** whether cell was reached by the last search, at distance d */
+    private boolean isAt(int cell, int d) {
+        return visited[cell] == stamp && distance[cell] == d;
+    }
+
+    /**
+     * Compute distances from start until end is reached. With end = -1, this
+     * visits every empty cell reachable from start, leaving them in queue.
+     */
+    private boolean search(BoardEngine board, int start, int end) {
+        if (++stamp == 0) { // wrapped around: stale stamps could collide
+            Arrays.fill(visited, 0);
+            stamp = 1;
+        }
+        head = 0;
+        tail = 0;
+        visited[start] = stamp;
+        distance[start] = 1;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int cell = queue[head++];
+            int next = distance[cell] + 1;
+
+            // try each direction one by one: top, right, bottom, left. Off
+            // the edge, the neighbor is cell itself, which is already visited
+            if (visit(board, geometry.neighbor(cell, BoardGeometry.UP), next, end)
+                    || visit(board, geometry.neighbor(cell, BoardGeometry.RIGHT), next, end)
+                    || visit(board, geometry.neighbor(cell, BoardGeometry.DOWN), next, end)
+                    || visit(board, geometry.neighbor(cell, BoardGeometry.LEFT), next, end))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Queue cell if it's empty and hasn't been reached yet.
+     * @return whether cell is the destination
+     */
+    private boolean visit(BoardEngine board, int cell, int d, int end) {
+        if (visited[cell] == stamp || !board.isEmpty(cell))
+            return false;
+        visited[cell] = stamp;
+        distance[cell] = d;
+        queue[tail++] = cell;
+        return cell == end;
+    }
+}
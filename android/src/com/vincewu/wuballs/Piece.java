@@ -0,0 +1,71 @@
+package com.vincewu.wuballs;
+
+/**
+ * A game piece encoded in a byte, so boards can hold balls without an object
+ * per ball: the color in the low 6 bits, and flags for Joker pieces and for
+ * balls the user has moved in the high bits.
+ *
+ * <pre>
+ * bit 7    MOVED   the ball has been moved by the user
+ * bit 6    JOKER   a Joker piece (color bits 0)
+ * bits 0-5 COLOR   ball type, 0 to MAX_COLORS - 1; all set for EMPTY
+ * </pre>
+ *
+ * Codes are read back from byte arrays as (b &amp; 0xFF).
+ */
+final class Piece {
+
+    static final int COLOR = 0x3F;
+    static final int JOKER = 0x40;
+    static final int MOVED = 0x80;
+
+    /** no ball: the one color that's never used */
+    static final int EMPTY = COLOR;
+
+    /** number of ball types that can be encoded */
+    static final int MAX_COLORS = COLOR;
+
+    private Piece() {
+    }
+
+    /**
+     * @param piece
+     *            ball type, or PieceQueue.JOKER
+     * @return the code of a new (unmoved) ball
+     */
+    static int of(int piece) {
+        return piece == PieceQueue.JOKER ? JOKER : piece;
+    }
+
+    /** the ball type, or PieceQueue.JOKER, of a ball's code */
+    static int piece(int code) {
+        return (code & JOKER) != 0 ? PieceQueue.JOKER : code & COLOR;
+    }
+
+    static int color(int code) {
+        return code & COLOR;
+    }
+
+    static boolean isJoker(int code) {
+        return (code & JOKER) != 0;
+    }
+
+    static boolean hasMoved(int code) {
+        return (code & MOVED) != 0;
+    }
+
+    /**
+     * Bit set of the colors a piece matches: its own color, every color for
+     * a Joker, none for EMPTY. Without branches: the color bit is shifted one
+     * too far and back, so EMPTY's color 63 falls off the top, and the Joker
+     * flag is smeared over all 64 bits before the shift back.
+     */
+    static long matchMask(int code) {
+        return ((2L << (code & COLOR)) | -(long) ((code >>> 6) & 1)) >>> 1;
+    }
+
+    /** whether two pieces can be part of the same line (a Joker matches anything) */
+    static boolean matches(int a, int b) {
+        return (matchMask(a) & matchMask(b)) != 0;
+    }
+}
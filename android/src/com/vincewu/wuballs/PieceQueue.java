@@ -0,0 +1,88 @@
+package com.vincewu.wuballs;
+
+/**
+ * Fixed-capacity ring buffer of upcoming game pieces. Pieces are stored as
+ * their type, with JOKER for Joker pieces.
+ */
+class PieceQueue implements Lookahead {
+
+    public static final int JOKER = -1;
+
+    private final byte[] pieces;
+    private final int mask; // capacity - 1
+    private int head; // slot of the next piece
+    private int count;
+
+    /** @param capacity rounded up to a power of 2 */
+    public PieceQueue(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        pieces = new byte[slots];
+        mask = slots - 1;
+    }
+
+    /** make this queue a copy of other, which must have the same capacity */
+    public void copyFrom(PieceQueue other) {
+        System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+        head = other.head;
+        count = other.count;
+    }
+
+    public int capacity() {
+        return pieces.length;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isJoker(int offset) {
+        return get(offset) == JOKER;
+    }
+
+    public int getType(int offset) {
+        return get(offset);
+    }
+
+    /** piece offset places ahead */
+    public int get(int offset) {
+        if (offset < 0 || offset >= count)
+            throw new IndexOutOfBoundsException("offset " + offset + ", size " + count);
+        return pieces[(head + offset) & mask];
+    }
+
+    /** add piece at the end of the queue */
+    public void add(int piece) {
+        if (count == pieces.length)
+            throw new IllegalStateException("queue is full");
+        pieces[(head + count++) & mask] = (byte) piece;
+    }
+
+    /** remove and return the next piece */
+    public int poll() {
+        int piece = get(0);
+        head = (head + 1) & mask;
+        count--;
+        return piece;
+    }
+
+    /** undo poll(): put piece back at the front of the queue */
+    public void unpoll(int piece) {
+        if (count == pieces.length)
+            throw new IllegalStateException("queue is full");
+        head = (head - 1) & mask;
+        pieces[head] = (byte) piece;
+        count++;
+    }
+
+    /** undo add(): remove and return the last piece */
+    public int removeLast() {
+        int piece = get(count - 1);
+        count--;
+        return piece;
+    }
+
+    public void clear() {
+        head = 0;
+        count = 0;
+    }
+}
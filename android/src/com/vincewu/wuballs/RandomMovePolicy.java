@@ -0,0 +1,47 @@
+package com.vincewu.wuballs;
+
+import java.util.Random;
+
+/**
+ * Plays a random legal move: a random ball that can move, to a random cell it
+ * can reach.
+ */
+class RandomMovePolicy implements MovePolicy {
+
+    private long[] reachable; // scratch mask, sized on first use
+
+    public int chooseMove(GameBoard board, Random random) {
+        int cells = board.size * board.size;
+        if (reachable == null || reachable.length != CellMask.words(cells))
+            reachable = CellMask.create(cells);
+
+        // every ball that can move is equally likely: take the n-th of them,
+        // with n drawn from the count the board keeps (see BoardHealth)
+        BoardHealth health = board.getHealth();
+        int movable = health.getMovableBalls();
+        if (movable == 0)
+            return Move.NONE;
+        int n = random.nextInt(movable);
+        int start = 0;
+        while (health.mobility(start) == 0 || n-- > 0)
+            start++;
+
+        int count;
+        try {
+            count = board.getReachable(start, reachable);
+        } catch (IllegalMoveException imex) {
+            throw new IllegalStateException("no ball at " + start, imex);
+        }
+        int end = CellMask.next(reachable, 0);
+        for (int y = random.nextInt(count); y > 0; y--)
+            end = CellMask.next(reachable, end + 1);
+        return Move.pack(start, end);
+    }
+
+    public MovePolicy copy() {
+        return new RandomMovePolicy();
+    }
+
+    public void close() {
+    }
+}
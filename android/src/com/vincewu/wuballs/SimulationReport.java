@@ -0,0 +1,118 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+
+/**
+ * Results of a Simulator batch: throughput, and the distributions of final
+ * score and game length (in moves).
+ */
+class SimulationReport {
+
+    private final int[] scores; // sorted
+    private final int[] lengths; // sorted
+    private final long totalMoves;
+    private final long elapsedNanos;
+
+    public SimulationReport(int[] scores, int[] lengths, long elapsedNanos) {
+        this.scores = scores.clone();
+        this.lengths = lengths.clone();
+        Arrays.sort(this.scores);
+        Arrays.sort(this.lengths);
+        long moves = 0;
+        for (int x = 0; x < lengths.length; x++)
+            moves += lengths[x];
+        this.totalMoves = moves;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getGames() {
+        return scores.length;
+    }
+
+    public long getTotalMoves() {
+        return totalMoves;
+    }
+
+    public double getElapsedSeconds() {
+        return elapsedNanos / 1e9;
+    }
+
+    public double getGamesPerSecond() {
+        return scores.length / getElapsedSeconds();
+    }
+
+    public double getMovesPerSecond() {
+        return totalMoves / getElapsedSeconds();
+    }
+
+    public double getMeanScore() {
+        return mean(scores);
+    }
+
+    /** @param p percentile, 0 to 100 */
+    public int getScorePercentile(double p) {
+        return percentile(scores, p);
+    }
+
+    public double getMeanLength() {
+        return mean(lengths);
+    }
+
+    /** @param p percentile, 0 to 100 */
+    public int getLengthPercentile(double p) {
+        return percentile(lengths, p);
+    }
+
+    /**
+     * @return number of games per score bucket: bucket b counts scores from
+     *         b * bucketSize up to (b + 1) * bucketSize - 1
+     */
+    public int[] getScoreHistogram(int bucketSize) {
+        if (scores.length == 0)
+            return new int[0];
+        int[] histogram = new int[scores[scores.length - 1] / bucketSize + 1];
+        for (int x = 0; x < scores.length; x++)
+            histogram[scores[x] / bucketSize]++;
+        return histogram;
+    }
+
+    private static double mean(int[] values) {
+        if (values.length == 0)
+            return 0;
+        long sum = 0;
+        for (int x = 0; x < values.length; x++)
+            sum += values[x];
+        return (double) sum / values.length;
+    }
+
+    private static int percentile(int[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+        int rank = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+
+    /** for printing */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d games, %d moves in %.2fs: %.0f games/s, %.0f moves/s%n",
+                getGames(), totalMoves, getElapsedSeconds(), getGamesPerSecond(),
+                getMovesPerSecond()));
+        sb.append(String.format("score:  mean %.1f, min %d, p10 %d, p50 %d, p90 %d, p99 %d, max %d%n",
+                getMeanScore(), getScorePercentile(0), getScorePercentile(10),
+                getScorePercentile(50), getScorePercentile(90), getScorePercentile(99),
+                getScorePercentile(100)));
+        sb.append(String.format("length: mean %.1f, min %d, p10 %d, p50 %d, p90 %d, p99 %d, max %d%n",
+                getMeanLength(), getLengthPercentile(0), getLengthPercentile(10),
+                getLengthPercentile(50), getLengthPercentile(90), getLengthPercentile(99),
+                getLengthPercentile(100)));
+        int bucketSize = 10;
+        int[] histogram = getScoreHistogram(bucketSize);
+        for (int b = 0; b < histogram.length; b++) {
+            if (histogram[b] > 0)
+                sb.append(String.format("  %5d-%-5d %d%n", b * bucketSize,
+                        (b + 1) * bucketSize - 1, histogram[b]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,179 @@
+package com.vincewu.wuballs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays full games of Wuballs without a UI, in parallel, and reports how
+ * they went. Each worker thread keeps one GameBoard and restarts it for
+ * every game, so a batch creates next to no garbage. Game n of a batch is
+ * seeded from (seed, n) alone, so a batch plays out the same on any number
+ * of threads.
+ *
+ * Run from the command line (no Android needed):
+ * java com.vincewu.wuballs.Simulator [games] [threads] [seed] [size]
+ */
+class Simulator {
+
+    private final GameOptions options;
+    private final MovePolicy policy;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxMoves = 100000; // stop endless games
+
+    public Simulator(GameOptions options, MovePolicy policy) {
+        this.options = options;
+        this.policy = policy;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setMaxMoves(int maxMoves) {
+        this.maxMoves = maxMoves;
+    }
+
+    /**
+     * Play numGames games. Game number n is seeded with gameSeed(masterSeed,
+     * n), so any game of a batch can be played again on its own.
+     */
+    public SimulationReport run(int numGames, long masterSeed)
+            throws InterruptedException, ExecutionException {
+        int[] scores = new int[numGames];
+        int[] lengths = new int[numGames];
+        AtomicInteger nextGame = new AtomicInteger();
+
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(new Worker(numGames, masterSeed, nextGame,
+                        scores, lengths)));
+            }
+            for (Future<?> worker : workers)
+                worker.get(); // rethrows anything that went wrong in a game
+        } finally {
+            executor.shutdown();
+        }
+        return new SimulationReport(scores, lengths, System.nanoTime() - startTime);
+    }
+
+    /** Plays games until there are none left */
+    private class Worker implements Runnable {
+        private final int numGames;
+        private final long masterSeed;
+        private final AtomicInteger nextGame;
+        private final int[] scores;
+        private final int[] lengths;
+
+        Worker(int numGames, long masterSeed, AtomicInteger nextGame, int[] scores,
+                int[] lengths) {
+            this.numGames = numGames;
+            this.masterSeed = masterSeed;
+            this.nextGame = nextGame;
+            this.scores = scores;
+            this.lengths = lengths;
+        }
+
+        public void run() {
+            GameBoard board = new GameBoard(options, masterSeed);
+            MovePolicy myPolicy = policy.copy();
+            Random random = new Random();
+            TurnResult turn = new TurnResult(board.size);
+            int[] result = new int[2];
+
+            int game;
+            try {
+                while ((game = nextGame.getAndIncrement()) < numGames) {
+                    long seed = gameSeed(masterSeed, game);
+                    board.restart(seed);
+                    random.setSeed(~seed);
+                    try {
+                        playGame(board, myPolicy, random, maxMoves, turn, result);
+                    } catch (IllegalMoveException imex) {
+                        throw new IllegalStateException("policy played an illegal move in game "
+                                + game, imex);
+                    }
+                    scores[game] = result[0];
+                    lengths[game] = result[1];
+                }
+            } finally {
+                myPolicy.close(); // its threads, if any
+            }
+        }
+    }
+
+    /**
+     * Play one game on a freshly restarted board until it's over, the policy
+     * gives up, or maxMoves moves have been played.
+     * 
+     * @param result
+     *            receives the final score and the number of moves
+     */
+    static void playGame(GameBoard board, MovePolicy policy, Random random, int maxMoves,
+            TurnResult turn, int[] result) throws IllegalMoveException {
+        int score = 0, moves = 0;
+        try {
+            for (int x = board.getInitialBalls(); x > 0; x--)
+                board.placeNextBall();
+            while (moves < maxMoves) {
+                int move = policy.chooseMove(board, random);
+                if (move == Move.NONE)
+                    break;
+                score += playTurn(board, Move.start(move), Move.end(move), turn);
+                moves++;
+            }
+        } catch (GameOverException goe) {
+            // board is full
+        }
+        result[0] = score;
+        result[1] = moves;
+    }
+
+    /**
+     * Play one turn, following the rules of the board as WuballsActivity
+     * does (see GameBoard.playTurn())
+     * 
+     * @param turn
+     *            receives what happened
+     * @return points scored
+     * @throws IllegalMoveException
+     *             if there is no route from start to end
+     * @throws GameOverException
+     *             if the board filled up
+     */
+    static int playTurn(GameBoard board, int start, int end, TurnResult turn)
+            throws IllegalMoveException, GameOverException {
+        if (!board.playTurn(start, end, turn))
+            throw new IllegalMoveException("no route from " + start + " to " + end);
+        return turn.getPoints();
+    }
+
+    /** seed for game number n of a batch */
+    static long gameSeed(long masterSeed, int n) {
+        return SplitMixRandom.seed(masterSeed, n);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 123;
+
+        GameOptions options = new GameOptions();
+        if (args.length > 3)
+            options.size = Integer.parseInt(args[3]);
+        options.engineType = GameBoard.EngineType.BITBOARD;
+        options.randomType = GameBoard.RandomType.SPLITMIX;
+        Simulator simulator = new Simulator(options, new RandomMovePolicy());
+        simulator.setThreads(threads);
+        System.out.println(simulator.run(games, seed));
+    }
+}
@@ -0,0 +1,64 @@
+package com.vincewu.wuballs;
+
+/**
+ * SplitMix64: a 64-bit counter run through a mixing function. Fast, passes
+ * BigCrush, and any number of unrelated streams can be derived from one
+ * seed (see seed()), so every game and every use within a game can have its
+ * own stream without sharing state. (java.util.SplittableRandom is the same
+ * generator, but needs API 24.)
+ */
+class SplitMixRandom implements GameRandom {
+
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    public SplitMixRandom(long seed) {
+        this.state = seed;
+    }
+
+    public void setSeed(long seed) {
+        this.state = seed;
+    }
+
+    public long nextLong() {
+        return mix(state += GAMMA);
+    }
+
+    public int nextInt(int bound) {
+        if (bound <= 0)
+            throw new IllegalArgumentException("bound must be positive: " + bound);
+        int r = (int) (nextLong() >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0)
+            return (int) ((bound * (long) r) >> 31);
+        // reject the top of the range that would make small values more likely
+        for (int u = r; u - (r = u % bound) + m < 0; u = (int) (nextLong() >>> 33))
+            ;
+        return r;
+    }
+
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /** seed for stream n of master: e.g. game n of a batch */
+    public static long seed(long master, long n) {
+        return mix(master + (n + 1) * GAMMA);
+    }
+
+    /** the SplitMix64 finalizer */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,130 @@
+package com.vincewu.wuballs;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size cache of search results by position hash (see Zobrist), shared
+ * by any number of search threads without locks.
+ *
+ * Each entry is two longs, the hash XORed with the data, and the data. A
+ * reader accepts an entry only if the two XOR back to the hash it looked
+ * for, so an entry torn by two threads writing at once reads as a miss
+ * instead of as wrong data.
+ *
+ * Entries come in buckets of two: the first keeps the deepest result, unless
+ * it's from an older search (see newSearch()), and the second takes
+ * whatever the first doesn't, including results pushed out of the first.
+ *
+ * Data is packed into a long: the value as a float in the low 32 bits, then
+ * the best move (start and end cells, 12 bits each), the depth (5 bits), a
+ * bit set in every stored entry, and the search generation (2 bits).
+ */
+class TranspositionTable {
+
+    /** probe() result when the position isn't in the table */
+    public static final long MISS = -1L; // never valid: the value bits would be a non-canonical NaN
+
+    public static final int MAX_DEPTH = 31;
+
+    private static final long USED = 1L << 61; // tells a stored entry from an empty one
+
+    private static final int NO_MOVE = 0xFFFFFF;
+
+    private final AtomicLongArray table; // [bucket * 4]: hash ^ data, data, then the second entry
+    private final int mask; // buckets - 1
+    private volatile int generation;
+
+    /** @param entries rounded up to a power of 2, at least 2 */
+    public TranspositionTable(int entries) {
+        int buckets = Integer.highestOneBit(Math.max(1, (entries + 1) / 2 - 1)) << 1;
+        table = new AtomicLongArray(buckets * 4);
+        mask = buckets - 1;
+    }
+
+    /** number of entries */
+    public int capacity() {
+        return table.length() / 2;
+    }
+
+    /**
+     * Start a new search: entries from earlier searches stay readable, but
+     * are replaced first
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 3;
+    }
+
+    public void clear() {
+        for (int x = 0; x < table.length(); x++)
+            table.set(x, 0);
+    }
+
+    /**
+     * @return the data stored for hash (read it with value(), move() and
+     *         depth()), or MISS
+     */
+    public long probe(long hash) {
+        int base = bucket(hash);
+        for (int e = base; e < base + 4; e += 2) {
+            long data = table.get(e + 1);
+            if ((data & USED) != 0 && (table.get(e) ^ data) == hash)
+                return data;
+        }
+        return MISS;
+    }
+
+    /**
+     * Remember the result of searching the position with hash to depth
+     * 
+     * @param move
+     *            best move found (see Move), or Move.NONE
+     */
+    public void store(long hash, float value, int move, int depth) {
+        if (depth < 0 || depth > MAX_DEPTH)
+            throw new IllegalArgumentException("depth: " + depth);
+        int packedMove = move == Move.NONE ? NO_MOVE : (Move.start(move) << 12) | Move.end(move);
+        int gen = generation;
+        long data = (Float.floatToIntBits(value) & 0xFFFFFFFFL) | ((long) packedMove << 32)
+                | ((long) depth << 56) | USED | ((long) gen << 62);
+
+        int base = bucket(hash);
+        long firstKey = table.get(base), first = table.get(base + 1);
+        boolean same = (firstKey ^ first) == hash;
+        if ((first & USED) == 0 || same || generation(first) != gen || depth >= depth(first)) {
+            if ((first & USED) != 0 && !same) {
+                // the second entry takes what the first had
+                table.set(base + 2, firstKey);
+                table.set(base + 3, first);
+            }
+            table.set(base, hash ^ data);
+            table.set(base + 1, data);
+        } else {
+            table.set(base + 2, hash ^ data);
+            table.set(base + 3, data);
+        }
+    }
+
+    /** value stored in data returned by probe() */
+    public static float value(long data) {
+        return Float.intBitsToFloat((int) data);
+    }
+
+    /** best move stored in data returned by probe(), or Move.NONE */
+    public static int move(long data) {
+        int packed = (int) (data >>> 32) & 0xFFFFFF;
+        return packed == NO_MOVE ? Move.NONE : Move.pack(packed >>> 12, packed & 0xFFF);
+    }
+
+    /** depth stored in data returned by probe() */
+    public static int depth(long data) {
+        return (int) (data >>> 56) & MAX_DEPTH;
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 62) & 3;
+    }
+
+    private int bucket(long hash) {
+        return ((int) (hash ^ (hash >>> 32)) & mask) * 4;
+    }
+}
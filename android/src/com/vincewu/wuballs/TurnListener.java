@@ -0,0 +1,17 @@
+package com.vincewu.wuballs;
+
+/**
+ * Gets every turn played on a GameBoard, e.g. to send the changes to
+ * another frontend. See GameBoard.setTurnListener().
+ */
+interface TurnListener {
+
+    /**
+     * turn was just played on board. Also called when the board filled up
+     * halfway through the turn, with what happened until then.
+     * 
+     * @param turn
+     *            only valid until the next turn
+     */
+    public void turnPlayed(GameBoard board, TurnResult turn);
+}
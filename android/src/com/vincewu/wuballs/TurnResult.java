@@ -0,0 +1,166 @@
+package com.vincewu.wuballs;
+
+/**
+ * Everything that changed in one turn (see GameBoard.playTurn()): the route
+ * of the moved ball, the balls placed, the balls removed, the points scored,
+ * and the set of cells whose contents changed. A frontend only needs to
+ * redraw the dirty cells; a bot or server can replay the delta elsewhere.
+ *
+ * Made once per board and reused for every turn, so playing a turn
+ * allocates nothing. Only valid until the next turn.
+ */
+class TurnResult {
+
+    public final int size; // the x in the x*x board the turns are played on
+
+    private int start, end; // the move
+    private int movedPiece; // type of the moved ball, or PieceQueue.JOKER
+    private final int[] path; // route of the moved ball, start and end included
+    private int pathLength;
+    private boolean connected; // whether the move itself made lines
+    private int points;
+    private final int[] placed; // cells of the balls placed, in order
+    private final int[] placedPieces; // what was placed there: type, or PieceQueue.JOKER
+    private int numPlaced;
+    private final int[] removed; // cells of the balls removed, in order
+    private final int[] removedPieces; // what was removed from there
+    private int numRemoved;
+    private final long[] dirty; // cells whose contents changed, see CellMask
+
+    /**
+     * @param size
+     *            the x in the x*x board the turns are played on
+     */
+    public TurnResult(int size) {
+        int cells = size * size;
+        this.size = size;
+        this.path = new int[cells];
+        this.placed = new int[cells];
+        this.placedPieces = new int[cells];
+        this.removed = new int[cells];
+        this.removedPieces = new int[cells];
+        this.dirty = CellMask.create(cells);
+    }
+
+    /** cell the ball was moved from */
+    public int getStart() {
+        return start;
+    }
+
+    /** cell the ball was moved to */
+    public int getEnd() {
+        return end;
+    }
+
+    /** what the moved ball is: ball type, or PieceQueue.JOKER */
+    public int getMovedPiece() {
+        return movedPiece;
+    }
+
+    /** number of cells in the route of the moved ball, start and end included */
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    /** the n-th cell of the route, from getStart() to getEnd() */
+    public int getPath(int n) {
+        return path[n];
+    }
+
+    /** whether the move made lines, in which case no balls were placed */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /** points scored in the turn, by the move and by cascades */
+    public int getPoints() {
+        return points;
+    }
+
+    public int getNumPlaced() {
+        return numPlaced;
+    }
+
+    /** cell of the n-th ball placed, 0 <= n < getNumPlaced() */
+    public int getPlaced(int n) {
+        return placed[n];
+    }
+
+    /**
+     * what the n-th ball placed was: ball type, or PieceQueue.JOKER. It may
+     * have been removed by a cascade since.
+     */
+    public int getPlacedPiece(int n) {
+        return placedPieces[n];
+    }
+
+    public int getNumRemoved() {
+        return numRemoved;
+    }
+
+    /** cell of the n-th ball removed, 0 <= n < getNumRemoved() */
+    public int getRemoved(int n) {
+        return removed[n];
+    }
+
+    /** what the n-th ball removed was: ball type, or PieceQueue.JOKER */
+    public int getRemovedPiece(int n) {
+        return removedPieces[n];
+    }
+
+    /** whether the contents of cell changed in the turn */
+    public boolean isDirty(int cell) {
+        return CellMask.contains(dirty, cell);
+    }
+
+    /**
+     * @return the first dirty cell at or after cell, or -1 if there is none.
+     *         Loop over the dirty cells with:
+     *         for (int c = nextDirty(0); c >= 0; c = nextDirty(c + 1))
+     */
+    public int nextDirty(int cell) {
+        return CellMask.next(dirty, cell);
+    }
+
+    /* Filled in by GameBoard */
+
+    /** receives the route of the move, see GameBoard.moveBall() */
+    int[] pathBuffer() {
+        return path;
+    }
+
+    void reset(int start, int end, int movedPiece, int pathLength) {
+        this.start = start;
+        this.end = end;
+        this.movedPiece = movedPiece;
+        this.pathLength = pathLength;
+        connected = false;
+        points = 0;
+        numPlaced = 0;
+        numRemoved = 0;
+        CellMask.clear(dirty);
+        CellMask.add(dirty, start);
+        CellMask.add(dirty, end);
+    }
+
+    void connect(int points) {
+        connected = true;
+        this.points += points;
+    }
+
+    void score(int points) {
+        this.points += points;
+    }
+
+    void place(int cell, int piece) {
+        placed[numPlaced] = cell;
+        placedPieces[numPlaced++] = piece;
+        CellMask.add(dirty, cell);
+    }
+
+    void remove(int cell, int piece) {
+        removed[numRemoved] = cell;
+        removedPieces[numRemoved++] = piece;
+        CellMask.add(dirty, cell);
+    }
+}
@@ -0,0 +1,33 @@
+package com.vincewu.wuballs;
+
+import java.util.Arrays;
+
+/**
+ * Growable stack of ints recording the changes made to a game, so they can
+ * be undone in reverse order. GameBoard decides what the entries mean.
+ */
+class UndoLog {
+
+    private int[] entries = new int[64];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public void push(int entry) {
+        if (size == entries.length)
+            entries = Arrays.copyOf(entries, size * 2);
+        entries[size++] = entry;
+    }
+
+    public int pop() {
+        if (size == 0)
+            throw new IllegalStateException("nothing to undo");
+        return entries[--size];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
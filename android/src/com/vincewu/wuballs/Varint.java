@@ -0,0 +1,40 @@
+package com.vincewu.wuballs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Unsigned variable-length ints, 7 bits per byte, low bits first: cell
+ * indexes and counts under 128 take one byte.
+ */
+final class Varint {
+
+    private Varint() {
+    }
+
+    /** @param value must not be negative */
+    public static void write(DataOutput out, int value) throws IOException {
+        if (value < 0)
+            throw new IllegalArgumentException("negative varint: " + value);
+        while (value >= 0x80) {
+            out.writeByte(value | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /** @return a value written by write(), never negative */
+    public static int read(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            if (shift == 28 && b > 0x07) // bits past the 31 of a non-negative int
+                throw new IOException("malformed varint");
+            value |= (b & 0x7F) << shift;
+            if (b < 0x80)
+                return value;
+        }
+        throw new IOException("malformed varint");
+    }
+}
@@ -1,10 +1,28 @@
 package com.vincewu.wuballs;
 
 class Wuball {
-    private static int jokerType = -1; // type representing a joker piece  
+    private static final int jokerType = -1; // type representing a joker piece  
 	private int type;
 	private boolean newBall = true;
 
+	/** a new Wuball for a piece code (see Piece) */
+	static Wuball fromPiece(int code) {
+		Wuball ball = new Wuball();
+		if (Piece.isJoker(code))
+			ball.setJokerType();
+		else
+			ball.setType(Piece.color(code));
+		if (Piece.hasMoved(code))
+			ball.setMoved();
+		return ball;
+	}
+
+	/** the piece code for this ball (see Piece) */
+	int toPiece() {
+		int code = isJokerBall() ? Piece.JOKER : type;
+		return newBall ? code : code | Piece.MOVED;
+	}
+
 	public void setJokerType() {
 		this.type = jokerType;
 	}
@@ -36,17 +54,22 @@ class Wuball {
         this.newBall = false;        
     }
 
+    /** whether the balls can be part of the same line: a Joker ball matches any ball */
+    public boolean matches(Wuball ball) {
+        return Piece.matches(toPiece(), ball.toPiece());
+    }
+
 	public boolean equals(Object o) {
 		if (this == o) return true;
 		if((o == null) || (o.getClass() != this.getClass())) return false; 
 		Wuball ball = (Wuball)o;  
-		// Joker ball matches any ball
-	    return (ball.type == this.type || ball.isJokerBall() || this.isJokerBall()); 
+	    return ball.type == this.type && ball.newBall == this.newBall; 
 	}
 	
 	public int hashCode() {
 		int hash = 7;
 		hash = 31 * hash + this.type;
+		hash = 31 * hash + (this.newBall ? 1 : 0);
 		return hash;
 	}
 }
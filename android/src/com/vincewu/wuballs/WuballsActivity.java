@@ -1,7 +1,8 @@
 package com.vincewu.wuballs;
 
+import java.io.IOException;
 import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import android.R.color;
 import android.animation.Animator;
@@ -14,6 +15,7 @@ import android.animation.ValueAnimator;
 import android.app.Activity;
 import android.graphics.Color;
 import android.media.MediaPlayer;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.Display;
 import android.view.View;
@@ -41,17 +43,21 @@ public class WuballsActivity extends Activity implements OnClickListener {
     // tracks which BoardCells have changed and need repainting
     // private LinkedList<GameBoard.BoardCell> dirtyBoardCells = null; 
     private GameBoard.BoardCell selectedBoardCell = null; // tracks user selection.
-    private Wuball movedWuball = null;
     private GameBoard.BoardCell prevSelectedBoardCell = null; // tracks user selection.
-    private GameBoard.BoardCell movedFromBoardCell = null; // tracks user selection.
-    private GameBoard.BoardCell movedToBoardCell = null; // tracks user selection.
     private LinkedList<GameBoard.BoardCell> newlyPlacedBoardCells = null;
     private LinkedList<GameBoard.BoardCell> removedBoardCells = null;
+    private TurnResult turn = null; // what changed in the last move, see repaintBoard()
     private enum GameState {
         INIT, OVER, MOVE_AND_CONNECT, MOVE_AND_ADD, CHANGE_SELECTION
     }
     
     
+    private static final String SAVED_GAME = "game"; // Bundle key of the GameSnapshot
+    private static final long HINT_BUDGET = 500; // milliseconds to think about a hint
+    
+    private HintEngine hintEngine = null; // suggests moves, see showHint()
+    private HintTask hintTask = null; // the hint being worked out, if any
+    
     private MediaPlayer clickSound;
     private MediaPlayer moveSound;
     private MediaPlayer appearSound;
@@ -84,7 +90,7 @@ public class WuballsActivity extends Activity implements OnClickListener {
             GameState whatChanged = play(cell);
             repaintBoard(whatChanged);
             if (whatChanged == GameState.MOVE_AND_ADD) repaintNextWuballs();
-            if (whatChanged == GameState.MOVE_AND_CONNECT) repaintScore();
+            if (whatChanged != GameState.CHANGE_SELECTION) repaintScore();
         } 
         catch (IllegalMoveException imex) {
             logError(imex.getMessage());
@@ -116,6 +122,18 @@ public class WuballsActivity extends Activity implements OnClickListener {
 
     }
 
+    /**
+     * handles click on the hint button: works out a move in the background,
+     * on a copy of the board, then shows it (see HintTask)
+     * 
+     * @param v the hint button
+     */
+    public void showHint(View v) {
+        if (hintTask != null) return; // still thinking about the last one
+        hintTask = new HintTask(gameBoard.getHash());
+        hintTask.execute(gameBoard.copy(System.nanoTime()));
+    }
+
     /**
      * User clicked somewhere on the board. Figure out what user intended to do. 
      * 
@@ -175,87 +193,19 @@ public class WuballsActivity extends Activity implements OnClickListener {
      * @return what happened after the move: connect-5 or placed new balls on the board
      */
     private GameState move(GameBoard.BoardCell start, GameBoard.BoardCell end) throws IllegalMoveException, GameOverException {
-        boolean placedNewBalls = false; // if the move didn't score, placeNewBalls will be true
-        List<GameBoard.BoardCell> path = gameBoard.moveBall(start, end);
-
-        if (path != null) {
-            this.movedFromBoardCell = start;
-            this.movedToBoardCell = end;
-            this.movedWuball = gameBoard.getWuball(end);
-            this.selectedBoardCell = null;
-            
-            /*
-
-            GameBoard.BoardCell cell;
-            FrameLayout cellEl;
-            ImageView pieceHolder;
-            Wuball wuball;
-            LinkedList<Animator> animations = new LinkedList<Animator>();
-            while (path.size() > 0) {
-        		cell = path.remove(0);
-                cellEl= (FrameLayout) ((TableRow) boardEl.getChildAt(cell.i)).getChildAt(cell.j);
-                pieceHolder = (ImageView) cellEl.getChildAt(0);
-                
-                pieceHolder.setAlpha(0f);
-                */
-//                PropertyValuesHolder pvhSX = PropertyValuesHolder.ofFloat("scaleX", 1.0f, 1.2f);
-  //              PropertyValuesHolder pvhSY = PropertyValuesHolder.ofFloat("scaleY", 1.0f, 0.0f);
-//                ObjectAnimator disappearAnim = ObjectAnimator.ofPropertyValuesHolder(pieceHolder, pvhSX, pvhSY);
-
-            /*
-                ObjectAnimator disappearAnim = ObjectAnimator.ofFloat(pieceHolder, "alpha", 1f, 0f);
-                disappearAnim.setDuration(50);
-                animations.add(disappearAnim);
-            }
-            if (animations.size() > 0) {
-                AnimatorSet moveAnim = new AnimatorSet();
-                moveAnim.playSequentially(animations);
-                moveAnim.start();
-            }
-            */
-
-            
-
-            // check if we have any 5+ game pieces in a rows
-            List<? extends List<GameBoard.BoardCell>> results = gameBoard.connectFive(end);
-            if (results != null && results.size() > 0) {
-                // remove the game pieces, and skip placing new ones
-                this.score += 2;
-                for (int x = 0; x < results.size(); x++) {
-                    List<GameBoard.BoardCell> list = results.get(x);
-                    this.removedBoardCells.addAll(list);
-                    this.score += (2 * list.size());
-                }
-                this.removedBoardCells.add(end);
-            } 
-            else {
-                // put three balls on the board
-            	placedNewBalls = true;
-                for (int x = 0; x < 3; x++) {
-                    GameBoard.BoardCell newPopulatedCell = gameBoard.placeBall();
-                    this.newlyPlacedBoardCells.push(newPopulatedCell);
-
-                    /* TODO: do this later, UI needs to show the ball appearing
-                    // check if we have any 5+ game pieces in a row
-                    results = gameBoard.connectFive(newPopulatedCell);
-                    if (results != null && results.size() > 0) {
-                        // remove the game pieces
-                        this.score += 2;
-                        for (int y = 0; y < results.size(); y++) {
-                            List<GameBoard.BoardCell> list = results.get(y);
-                            this.removedBoardCells.addAll(list);
-                            this.score += (2 * list.size());
-                        }
-                    }
-                    */
-                }                
-            }
-        } 
-        else {
+        if (!gameBoard.playTurn(start, end, turn)) {
             throw new IllegalMoveException(this.getString(R.string.ex_bad_move));
         }
 
-        return (placedNewBalls ? GameState.MOVE_AND_ADD : GameState.MOVE_AND_CONNECT);
+        // turn has everything that changed, for repaintBoard()
+        this.selectedBoardCell = null;
+        this.score += turn.getPoints();
+        return (turn.isConnected() ? GameState.MOVE_AND_CONNECT : GameState.MOVE_AND_ADD);
+    }
+
+    /** BoardCell of a flat cell index */
+    private GameBoard.BoardCell cellAt(int cell) {
+        return gameBoard.new BoardCell(cell / gameBoard.size, cell % gameBoard.size);
     }
 
     /** Called when the activity is first created. */
@@ -263,9 +213,12 @@ public class WuballsActivity extends Activity implements OnClickListener {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         
-        // clean and setup data structures
+        // clean and setup data structures, and carry on the saved game, if any
         rebootGameState();
-        startGame();
+        if (!resumeGame(savedInstanceState)) startGame();
+        
+        hintEngine = new HintEngine(Math.min(8, Runtime.getRuntime().availableProcessors()), System.nanoTime());
+        hintEngine.setBudget(HINT_BUDGET);
         
         clickSound = MediaPlayer.create(this, R.raw.click);
         moveSound = MediaPlayer.create(this, R.raw.move);
@@ -276,13 +229,59 @@ public class WuballsActivity extends Activity implements OnClickListener {
         setContentView(R.layout.main);
         initializeGameUI();
         repaintBoard(GameState.INIT);
+        if (selectedBoardCell != null) {
+            // highlight the selection of the saved game, quietly
+            FrameLayout cellEl = (FrameLayout) ((TableRow) boardEl.getChildAt(selectedBoardCell.i)).getChildAt(selectedBoardCell.j);
+            cellEl.setBackgroundColor(Color.rgb(255, 247, 0)); // TODO: remove hardcode
+        }
         repaintNextWuballs();
         repaintScore();
     }
     
+    /** Called before the activity may be killed: save the game, so onCreate() can carry on with it */
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        int selection = selectedBoardCell == null ? -1 : selectedBoardCell.i * gameBoard.size + selectedBoardCell.j;
+        outState.putByteArray(SAVED_GAME, GameSnapshot.save(gameBoard, score, selection));
+    }
+    
+    /**
+     * Carry on the game saved by onSaveInstanceState(). Every ball on the
+     * board goes into newlyPlacedBoardCells, to be painted.
+     * 
+     * @return false if there is no saved game, or it can't be read
+     */
+    private boolean resumeGame(Bundle savedInstanceState) {
+        if (savedInstanceState == null) return false;
+        byte[] saved = savedInstanceState.getByteArray(SAVED_GAME);
+        if (saved == null) return false;
+        
+        GameSnapshot snapshot;
+        try {
+            snapshot = GameSnapshot.restore(saved, gameBoard);
+        } 
+        catch (IOException ioex) {
+            return false; // the board is untouched, start over
+        }
+        this.score = snapshot.score;
+        if (snapshot.selection >= 0) {
+            this.selectedBoardCell = gameBoard.new BoardCell(snapshot.selection / gameBoard.size, snapshot.selection % gameBoard.size);
+        }
+        for (int x = 0; x < gameBoard.size; x++) {
+            for (int y = 0; y < gameBoard.size; y++) {
+                if (!gameBoard.isEmpty(x * gameBoard.size + y)) this.newlyPlacedBoardCells.push(gameBoard.new BoardCell(x, y));
+            }
+        }
+        return true;
+    }
+    
     /** Called when the activity is destroyed. */
     @Override
     public void onDestroy() {
+        if (hintTask != null) hintTask.cancel(true);
+        hintEngine.shutdown();
+        
         clickSound.release();
         moveSound.release();
         appearSound.release();
@@ -378,48 +377,28 @@ public class WuballsActivity extends Activity implements OnClickListener {
             	
             case MOVE_AND_ADD:          
             case MOVE_AND_CONNECT:
-            	if (movedFromBoardCell != null) {
-            		cell = movedFromBoardCell;
+                // only repaint the cells that changed: the move, and the balls placed or removed
+                for (int c = turn.nextDirty(0); c >= 0; c = turn.nextDirty(c + 1)) {
+                    cell = cellAt(c);
                     cellEl= (FrameLayout) ((TableRow) boardEl.getChildAt(cell.i)).getChildAt(cell.j);
                     pieceHolder = (ImageView) cellEl.getChildAt(0);
+                    wuball = gameBoard.getWuball(cell);
 
-                    // user canceling the previously selected piece
-                    if ((cell.i+cell.j) % 2 == 1) cellEl.setBackgroundColor(Color.rgb(232, 237, 255)); 
-                    else cellEl.setBackgroundColor(Color.rgb(255, 255, 255)); 
-                    this.movedFromBoardCell = null;
-                    pieceHolder.setImageResource(R.drawable.spacer_48);
-            	}
-            	
-            	// TODO: animate ball to final location
-
-            	if (movedToBoardCell != null) {
-                    cell = movedToBoardCell;
-                    cellEl= (FrameLayout) ((TableRow) boardEl.getChildAt(cell.i)).getChildAt(cell.j);
-                    pieceHolder = (ImageView) cellEl.getChildAt(0);
-                    wuball = this.movedWuball;
-                
                     if ((cell.i+cell.j) % 2 == 1) cellEl.setBackgroundColor(Color.rgb(232, 237, 255)); 
                     else cellEl.setBackgroundColor(Color.rgb(255, 255, 255)); 
 
-                    this.movedToBoardCell = null;
-                    this.movedWuball = null;
-
-                    if (wuball.isJokerBall()) pieceHolder.setImageResource(jokerPiece);
-                    else pieceHolder.setImageResource(gamePieces[wuball.getType()]);                    
-            	}           	
+                    if (wuball == null) pieceHolder.setImageResource(R.drawable.spacer_48);
+                    else if (wuball.isJokerBall()) pieceHolder.setImageResource(jokerPiece);
+                    else pieceHolder.setImageResource(gamePieces[wuball.getType()]);
+                }
             	
-            	if (newlyPlacedBoardCells.size() > 0) {
-	                while (newlyPlacedBoardCells.size() > 0) {
-	                    cell = newlyPlacedBoardCells.pop();
+            	// TODO: animate ball to final location, along the route in turn
+
+            	if (turn.getNumPlaced() > 0) {
+	                for (int x = 0; x < turn.getNumPlaced(); x++) {
+	                    cell = cellAt(turn.getPlaced(x));
 	                    cellEl= (FrameLayout) ((TableRow) boardEl.getChildAt(cell.i)).getChildAt(cell.j);
 	                    pieceHolder = (ImageView) cellEl.getChildAt(0);
-	                    wuball = gameBoard.getWuball(cell);
-	
-	                    if ((cell.i+cell.j) % 2 == 1) cellEl.setBackgroundColor(Color.rgb(232, 237, 255)); 
-	                    else cellEl.setBackgroundColor(Color.rgb(255, 255, 255)); 
-	
-	                    if (wuball.isJokerBall()) pieceHolder.setImageResource(jokerPiece);
-	                    else pieceHolder.setImageResource(gamePieces[wuball.getType()]);
 
 		                PropertyValuesHolder pvhSX = PropertyValuesHolder.ofFloat("scaleX", 0.2f, 1.0f);
 		                PropertyValuesHolder pvhSY = PropertyValuesHolder.ofFloat("scaleY", 0.2f, 1.0f);
@@ -432,17 +411,18 @@ public class WuballsActivity extends Activity implements OnClickListener {
 	                animSet.playTogether(animations);
 	                animSet.start();
                     appearSound.start();
+                    animations.clear();
             	}
             	
-            	if (removedBoardCells.size() > 0) {
-	                while (removedBoardCells.size() > 0) {
-	                    cell = removedBoardCells.pop();
+            	if (turn.getNumRemoved() > 0) {
+	                for (int x = 0; x < turn.getNumRemoved(); x++) {
+	                    cell = cellAt(turn.getRemoved(x));
 	                    cellEl= (FrameLayout) ((TableRow) boardEl.getChildAt(cell.i)).getChildAt(cell.j);
 	                    pieceHolder = (ImageView) cellEl.getChildAt(0);
-	                    wuball = gameBoard.getWuball(cell);
 	                    
-	                    if ((cell.i+cell.j) % 2 == 1) cellEl.setBackgroundColor(Color.rgb(232, 237, 255)); 
-	                    else cellEl.setBackgroundColor(Color.rgb(255, 255, 255)); 
+	                    // the ball is gone from the board already, show it on its way out
+	                    if (turn.getRemovedPiece(x) == PieceQueue.JOKER) pieceHolder.setImageResource(jokerPiece);
+	                    else pieceHolder.setImageResource(gamePieces[turn.getRemovedPiece(x)]);
 	                    
 	                    float startX = pieceHolder.getX();
 	                    float startY = pieceHolder.getY();
@@ -526,16 +506,15 @@ public class WuballsActivity extends Activity implements OnClickListener {
      * Repaints the "next x balls" gui
      */
     private void repaintNextWuballs() {
-        List<Wuball> nextThree = gameBoard.peek(3);
+        Lookahead nextThree = gameBoard.lookahead(3);
         
         for (int x = 0; x < 3; x++) {
-            Wuball next = nextThree.get(x);
             nextWuballsEl[x].setAlpha(0.3f);
 
-            if (next.isJokerBall()) {
+            if (nextThree.isJoker(x)) {
                 nextWuballsEl[x].setImageResource(jokerPiece);
             } else {
-                nextWuballsEl[x].setImageResource(gamePieces[next.getType()]);
+                nextWuballsEl[x].setImageResource(gamePieces[nextThree.getType(x)]);
             }
             ObjectAnimator anim = ObjectAnimator.ofFloat(nextWuballsEl[x], "alpha", 0.3f, 1f);
             anim.setDuration(500);
@@ -569,9 +548,9 @@ public class WuballsActivity extends Activity implements OnClickListener {
          * <TableRow> <FrameLayout><ImageView>spacer</ImageView></FrameLayout>
          * ... </TableRow> </table>
          */
-        for (int i = 0; i < 9; i++) {
+        for (int i = 0; i < gameBoard.size; i++) {
             TableRow tr = new TableRow(this);
-            for (int j = 0; j < 9; j++) {
+            for (int j = 0; j < gameBoard.size; j++) {
                 FrameLayout cell = new FrameLayout(this);
                 
                 // Grid color TODO: remove hardcode
@@ -600,17 +579,18 @@ public class WuballsActivity extends Activity implements OnClickListener {
      */
     private void rebootGameState() {
         gameBoard = GameBoard.getInstance();
-        gameBoard.restart();
+        gameBoard.restart(System.nanoTime()); // a new game each time, not the same one again
         score = 0;
         this.selectedBoardCell = null;
         this.prevSelectedBoardCell = null;
         this.newlyPlacedBoardCells = new LinkedList<GameBoard.BoardCell>();
         this.removedBoardCells = new LinkedList<GameBoard.BoardCell>();
+        this.turn = new TurnResult(gameBoard.size);
     }
 
     private void startGame() {
         // start the game by putting x pieces on the board
-        for (int x = 0; x < 5; x++) {
+        for (int x = 0; x < gameBoard.getInitialBalls(); x++) {
             try {
                 newlyPlacedBoardCells.add(gameBoard.placeBall());
             } 
@@ -621,6 +601,50 @@ public class WuballsActivity extends Activity implements OnClickListener {
     }
     
     
+    /**
+     * Works out a hint on a copy of the board, off the UI thread. When it's
+     * done, the hinted ball gets selected and the cell it should go to
+     * flashes, unless the game has moved on meanwhile.
+     */
+    private class HintTask extends AsyncTask<GameBoard, Void, HintEngine.Hint> {
+        private final long position; // hash of the board the hint is for
+
+        HintTask(long position) {
+            this.position = position;
+        }
+
+        @Override
+        protected HintEngine.Hint doInBackground(GameBoard... boards) {
+            try {
+                return hintEngine.hint(boards[0]);
+            } 
+            catch (InterruptedException iex) {
+                return null;
+            } 
+            catch (RejectedExecutionException reex) {
+                return null; // the activity is going away
+            }
+        }
+
+        @Override
+        protected void onPostExecute(HintEngine.Hint hint) {
+            hintTask = null;
+            if (hint == null || hint.move == Move.NONE || gameBoard.getHash() != position) return;
+            
+            prevSelectedBoardCell = selectedBoardCell;
+            selectedBoardCell = cellAt(Move.start(hint.move));
+            repaintBoard(GameState.CHANGE_SELECTION);
+            
+            GameBoard.BoardCell end = cellAt(Move.end(hint.move));
+            FrameLayout cellEl = (FrameLayout) ((TableRow) boardEl.getChildAt(end.i)).getChildAt(end.j);
+            ObjectAnimator flash = ObjectAnimator.ofFloat(cellEl, "alpha", 1f, 0.2f);
+            flash.setDuration(250);
+            flash.setRepeatCount(3);
+            flash.setRepeatMode(ValueAnimator.REVERSE);
+            flash.start();
+        }
+    }
+    
     public class Connect5Listener implements AnimatorListener {
 
         public Connect5Listener() {
@@ -0,0 +1,67 @@
+package com.vincewu.wuballs;
+
+/**
+ * Zobrist keys for hashing board positions: one random 64-bit key per piece
+ * and cell, and a position hashes to the XOR of the keys of its balls. A ball
+ * coming or going flips its key, so GameBoard keeps the hash up to date in
+ * constant time per change. The upcoming pieces have keys of their own, per
+ * piece and place in the queue.
+ *
+ * Keys come from a fixed seed, so boards with the same size and number of
+ * ball types hash the same position to the same value. They're computed once
+ * per size and number of types, and shared by every such board.
+ *
+ * Immutable, so safe to share between threads.
+ */
+final class Zobrist {
+
+    private static final Zobrist[][] keySets = new Zobrist[GameBoard.MAX_SIZE + 1][];
+
+    private final int cells;
+    private final long[] keys; // [piece * cells + cell], piece numTypes for Jokers
+    private final long[] upcomingKeys; // [piece * MAX_LOOKAHEAD + offset]
+
+    /**
+     * the keys for an x*x board, size GameBoard.MIN_SIZE to MAX_SIZE
+     *
+     * @param numTypes
+     *            number of ball types, not including Joker, 1 to
+     *            Piece.MAX_COLORS
+     */
+    static synchronized Zobrist of(int size, int numTypes) {
+        if (keySets[size] == null)
+            keySets[size] = new Zobrist[Piece.MAX_COLORS + 1];
+        if (keySets[size][numTypes] == null)
+            keySets[size][numTypes] = new Zobrist(size * size, numTypes);
+        return keySets[size][numTypes];
+    }
+
+    private Zobrist(int cells, int numTypes) {
+        this.cells = cells;
+        this.keys = new long[(numTypes + 1) * cells];
+        this.upcomingKeys = new long[(numTypes + 1) * GameBoard.MAX_LOOKAHEAD];
+        SplitMixRandom random = new SplitMixRandom(0x5A0B3157L);
+        for (int k = 0; k < keys.length; k++)
+            keys[k] = random.nextLong();
+        for (int k = 0; k < upcomingKeys.length; k++)
+            upcomingKeys[k] = random.nextLong();
+    }
+
+    /**
+     * @param piece
+     *            ball type, or numTypes for a Joker
+     */
+    public long key(int piece, int cell) {
+        return keys[piece * cells + cell];
+    }
+
+    /**
+     * @param piece
+     *            ball type, or numTypes for a Joker
+     * @param offset
+     *            place in the queue of upcoming pieces, 0 for the next
+     */
+    public long upcomingKey(int piece, int offset) {
+        return upcomingKeys[piece * GameBoard.MAX_LOOKAHEAD + offset];
+    }
+}